@@ -68,6 +68,8 @@ dependencies {
 
     // Testing dependencies
     testImplementation(libs.junit)
+    // Real org.json for JVM tests, the android.jar copy only has stubs
+    testImplementation(libs.json)
     androidTestImplementation(libs.junit.v115)
     androidTestImplementation(libs.espresso.core.v351)
 }
\ No newline at end of file
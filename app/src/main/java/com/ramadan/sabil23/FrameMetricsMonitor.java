@@ -0,0 +1,294 @@
+package com.ramadan.sabil23;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.view.Window;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records how long each frame of the key screens takes, in debug builds only.
+ *
+ * Frame durations come from FrameMetrics and go into a ring buffer of the last
+ * BUFFER_SIZE frames, tagged with the screen and with the operation running on the main
+ * thread (marker add, route draw, list bind). An operation keeps tagging frames for
+ * OPERATION_LINGER_NS after it ends, because the frame drawing its work is reported
+ * after the work itself. Percentiles and the share of janky frames, those slower than
+ * the display refresh, are computed from the buffer and shown in a small overlay,
+ * together with the counters of the NavigationManager route cache.
+ *
+ * Screens call attach() in onResume() and detach() in onPause().
+ */
+public class FrameMetricsMonitor {
+    private static final String TAG = "FrameMetricsMonitor";
+
+    // Operations frames are tagged with
+    public static final String OP_IDLE = "idle";
+    public static final String OP_MARKER_ADD = "marker_add";
+    public static final String OP_ROUTE_DRAW = "route_draw";
+    public static final String OP_LIST_BIND = "list_bind";
+
+    // Frames kept for the statistics
+    private static final int BUFFER_SIZE = 1024;
+
+    // How long an operation keeps tagging frames after it ended
+    private static final long OPERATION_LINGER_NS = 100_000_000L; // 100ms
+
+    private static final long OVERLAY_REFRESH_MS = 1000;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    // Singleton instance
+    private static FrameMetricsMonitor instance;
+
+    private final boolean enabled;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Handler metricsHandler;
+
+    // Ring buffer, guarded by this
+    private final long[] durations = new long[BUFFER_SIZE];
+    private final boolean[] janky = new boolean[BUFFER_SIZE];
+    private final String[] screens = new String[BUFFER_SIZE];
+    private final String[] operations = new String[BUFFER_SIZE];
+    private int next;
+    private int count;
+
+    // Operation running on the main thread, and when it ended (0 while running)
+    private volatile String operation = OP_IDLE;
+    private volatile long operationEndedAt;
+
+    // Listeners and overlays of the attached screens
+    private final Map<Activity, Window.OnFrameMetricsAvailableListener> listeners = new HashMap<>();
+    private final Map<Activity, TextView> overlays = new HashMap<>();
+    private final Runnable overlayUpdater = this::updateOverlays;
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized FrameMetricsMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new FrameMetricsMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FrameMetricsMonitor(Context context) {
+        enabled = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts recording the frames of a screen and shows its overlay
+     */
+    public void attach(Activity activity) {
+        if (!enabled || listeners.containsKey(activity)) return;
+
+        if (metricsHandler == null) {
+            HandlerThread thread = new HandlerThread("FrameMetrics");
+            thread.start();
+            metricsHandler = new Handler(thread.getLooper());
+        }
+
+        final String screen = activity.getClass().getSimpleName();
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        final long frameBudget = (long) (1_000_000_000L / (refreshRate > 0 ? refreshRate : DEFAULT_REFRESH_RATE));
+
+        Window.OnFrameMetricsAvailableListener listener = (window, metrics, dropCount) -> {
+            if (dropCount > 0) {
+                Log.w(TAG, screen + ": " + dropCount + " frames not reported");
+            }
+            long duration = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+            record(screen, currentOperation(System.nanoTime()), duration, duration > frameBudget);
+        };
+        activity.getWindow().addOnFrameMetricsAvailableListener(listener, metricsHandler);
+        listeners.put(activity, listener);
+
+        // Small text in the top corner, above the content of the screen
+        TextView overlay = new TextView(activity);
+        overlay.setTextSize(10);
+        overlay.setTextColor(Color.WHITE);
+        overlay.setBackgroundColor(0x99000000);
+        overlay.setPadding(8, 4, 8, 4);
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.TOP | Gravity.START);
+        ((ViewGroup) activity.getWindow().getDecorView()).addView(overlay, params);
+        overlays.put(activity, overlay);
+
+        mainHandler.removeCallbacks(overlayUpdater);
+        mainHandler.post(overlayUpdater);
+    }
+
+    /**
+     * Stops recording the frames of a screen and removes its overlay
+     */
+    public void detach(Activity activity) {
+        Window.OnFrameMetricsAvailableListener listener = listeners.remove(activity);
+        if (listener != null) {
+            activity.getWindow().removeOnFrameMetricsAvailableListener(listener);
+        }
+        TextView overlay = overlays.remove(activity);
+        if (overlay != null) {
+            ((ViewGroup) activity.getWindow().getDecorView()).removeView(overlay);
+        }
+        if (overlays.isEmpty()) {
+            mainHandler.removeCallbacks(overlayUpdater);
+        }
+    }
+
+    /**
+     * Tags the following frames with an operation until endOperation() is called
+     */
+    public void beginOperation(String operation) {
+        if (!enabled) return;
+        this.operation = operation;
+        this.operationEndedAt = 0;
+    }
+
+    /**
+     * Ends an operation, frames drawn shortly after still count towards it
+     */
+    public void endOperation(String operation) {
+        if (!enabled || !operation.equals(this.operation)) return;
+        this.operationEndedAt = System.nanoTime();
+    }
+
+    /**
+     * Tags the frames drawn right after, for work that is only drawn in the next frame
+     * such as an adapter update
+     */
+    public void markOperation(String operation) {
+        beginOperation(operation);
+        endOperation(operation);
+    }
+
+    /**
+     * Frame statistics of a screen and operation in the buffer, either may be null for all
+     */
+    public synchronized Stats getStats(String screen, String operation) {
+        long[] selected = new long[count];
+        int selectedCount = 0;
+        int jankCount = 0;
+        for (int i = 0; i < count; i++) {
+            if ((screen == null || screen.equals(screens[i]))
+                    && (operation == null || operation.equals(operations[i]))) {
+                selected[selectedCount++] = durations[i];
+                if (janky[i]) jankCount++;
+            }
+        }
+        Arrays.sort(selected, 0, selectedCount);
+        return new Stats(selected, selectedCount, jankCount);
+    }
+
+    /**
+     * Summary of a screen, one line overall and one per operation seen
+     */
+    public String summarize(String screen) {
+        Set<String> seen = new LinkedHashSet<>();
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                if (screen.equals(screens[i])) seen.add(operations[i]);
+            }
+        }
+
+        StringBuilder summary = new StringBuilder(screen).append(' ')
+                .append(getStats(screen, null));
+        for (String op : seen) {
+            summary.append('\n').append(op).append(' ').append(getStats(screen, op));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Forgets every recorded frame
+     */
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    private synchronized void record(String screen, String operation, long duration, boolean isJanky) {
+        durations[next] = duration;
+        janky[next] = isJanky;
+        screens[next] = screen;
+        operations[next] = operation;
+        next = (next + 1) % BUFFER_SIZE;
+        if (count < BUFFER_SIZE) count++;
+    }
+
+    private String currentOperation(long now) {
+        String current = operation;
+        long endedAt = operationEndedAt;
+        return endedAt != 0 && now - endedAt > OPERATION_LINGER_NS ? OP_IDLE : current;
+    }
+
+    private void updateOverlays() {
+        for (Map.Entry<Activity, TextView> entry : overlays.entrySet()) {
+            Activity activity = entry.getKey();
+            entry.getValue().setText(summarize(activity.getClass().getSimpleName())
+                    + "\nroute_cache " + NavigationManager.getInstance(activity).getRouteCacheStats());
+        }
+        if (!overlays.isEmpty()) {
+            mainHandler.postDelayed(overlayUpdater, OVERLAY_REFRESH_MS);
+        }
+    }
+
+    /**
+     * Frame duration percentiles and jank share of a set of frames
+     */
+    public static class Stats {
+        private final int frameCount;
+        private final int jankCount;
+        private final float p50;
+        private final float p90;
+        private final float p95;
+        private final float p99;
+
+        Stats(long[] sortedDurations, int count, int jankCount) {
+            this.frameCount = count;
+            this.jankCount = jankCount;
+            this.p50 = percentile(sortedDurations, count, 50);
+            this.p90 = percentile(sortedDurations, count, 90);
+            this.p95 = percentile(sortedDurations, count, 95);
+            this.p99 = percentile(sortedDurations, count, 99);
+        }
+
+        public int getFrameCount() { return frameCount; }
+        public int getJankCount() { return jankCount; }
+        public float getJankRatio() { return frameCount > 0 ? (float) jankCount / frameCount : 0f; }
+        public float getP50Millis() { return p50; }
+        public float getP90Millis() { return p90; }
+        public float getP95Millis() { return p95; }
+        public float getP99Millis() { return p99; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d jank=%.1f%% p50=%.1f p90=%.1f p95=%.1f p99=%.1fms",
+                    frameCount, getJankRatio() * 100, p50, p90, p95, p99);
+        }
+
+        private static float percentile(long[] sorted, int count, int percent) {
+            if (count == 0) return 0f;
+            int index = Math.min(count - 1, (int) Math.ceil(count * percent / 100.0) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000f;
+        }
+    }
+}
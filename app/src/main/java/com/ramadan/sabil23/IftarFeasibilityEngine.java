@@ -0,0 +1,318 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.ramadan.sabil23.location.GeoHash;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Works out which candidate restaurants can be reached before Maghrib.
+ *
+ * Travel times come from one NavigationManager travel time matrix for the nearest
+ * MAX_MATRIX_CANDIDATES, sent in batches, then a single pass over primitive arrays
+ * computes for each candidate the arrival time, the slack against Maghrib and whether
+ * it is open at arrival. A candidate is feasible when it is reached in time and stays
+ * open through the Iftar window. Candidates past the nearest ones, and those the matrix
+ * could not answer, fall back to a straight-line estimate, so every candidate is judged.
+ * Candidates without weekly hours are judged on arrival alone, their open-now flag says
+ * nothing about the Iftar window, so their hours are reported as unknown instead.
+ *
+ * The last result is reused while the origin stays within CACHE_MAX_DISTANCE_METERS of
+ * where its travel times were fetched, they are younger than CACHE_MAX_AGE_MS and the
+ * Maghrib time is the same. When only the candidates changed, the travel times it knows
+ * are kept by place ID and only the new candidates go to the matrix.
+ * Work runs on a background thread and callbacks fire on it.
+ */
+public class IftarFeasibilityEngine {
+    private static final String TAG = "IftarFeasibilityEngine";
+
+    // Most candidates sent to the travel time matrix, the nearest ones
+    private static final int MAX_MATRIX_CANDIDATES = 200;
+
+    // When a result is still good enough to reuse
+    private static final double CACHE_MAX_DISTANCE_METERS = 250;
+    private static final long CACHE_MAX_AGE_MS = 2 * 60 * 1000; // 2 minutes
+
+    // Straight-line fallback, city driving along a road network
+    private static final double FALLBACK_SPEED_MPS = 8.3; // 30 km/h
+    private static final double FALLBACK_DETOUR_FACTOR = 1.4;
+
+    // Singleton instance
+    private static IftarFeasibilityEngine instance;
+
+    /**
+     * Interface for feasibility callbacks
+     */
+    public interface FeasibilityCallback {
+        void onFeasibilityComputed(Result result);
+    }
+
+    private final Context context;
+    private final NavigationManager navigationManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Last result, only touched on the executor thread
+    private Result lastResult;
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized IftarFeasibilityEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new IftarFeasibilityEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private IftarFeasibilityEngine(Context context) {
+        this.context = context;
+        this.navigationManager = NavigationManager.getInstance(context);
+    }
+
+    /**
+     * Evaluates candidates from an origin. Maghrib is computed from the prayer time
+     * settings when it is null.
+     */
+    public void evaluate(final LatLng origin, final List<Restaurant> candidates, final Calendar maghrib,
+                         final FeasibilityCallback callback) {
+        final List<Restaurant> snapshot = new ArrayList<>(candidates);
+        executor.execute(() -> {
+            Calendar iftar = maghrib != null ? maghrib
+                    : PrayerTimesCalculator.fromPreferences(context, origin.latitude, origin.longitude)
+                    .getIftarTime(Calendar.getInstance());
+            List<Restaurant> ordered = byDistance(snapshot, origin);
+
+            long now = System.currentTimeMillis();
+            Result last = lastResult != null && lastResult.canReuse(origin, iftar, now) ? lastResult : null;
+            if (last != null && last.hasCandidates(ordered)) {
+                callback.onFeasibilityComputed(last);
+                return;
+            }
+
+            // Keep the travel times the last result knows, only the new candidates among
+            // the nearest ones go to the matrix
+            Map<String, Integer> known = last != null ? last.getKnownTravelTimes() : Collections.emptyMap();
+            int[] seconds = new int[ordered.size()];
+            int matrixCount = Math.min(ordered.size(), MAX_MATRIX_CANDIDATES);
+            List<Integer> missing = new ArrayList<>();
+            List<LatLng> destinations = new ArrayList<>();
+            for (int i = 0; i < ordered.size(); i++) {
+                Integer travel = known.get(ordered.get(i).getId());
+                seconds[i] = travel != null ? travel : NavigationManager.TRAVEL_TIME_UNKNOWN;
+                if (travel == null && i < matrixCount) {
+                    missing.add(i);
+                    destinations.add(ordered.get(i).getPosition());
+                }
+            }
+
+            // Merged times are only as fresh as the oldest ones kept
+            LatLng timesOrigin = last != null ? last.timesOrigin : origin;
+            long timesAt = last != null ? last.timesAt : now;
+            if (missing.isEmpty()) {
+                finish(origin, ordered, iftar, seconds, timesOrigin, timesAt, callback);
+                return;
+            }
+            navigationManager.getTravelTimes(origin, destinations, NavigationManager.MODE_DRIVING, true,
+                    new NavigationManager.TravelTimesCallback() {
+                        @Override
+                        public void onTravelTimesLoaded(int[] loaded) {
+                            for (int j = 0; j < missing.size() && j < loaded.length; j++) {
+                                seconds[missing.get(j)] = loaded[j];
+                            }
+                            finish(origin, ordered, iftar, seconds, timesOrigin, timesAt, callback);
+                        }
+
+                        @Override
+                        public void onTravelTimesFailed(String errorMessage) {
+                            finish(origin, ordered, iftar, seconds, timesOrigin, timesAt, callback);
+                        }
+                    });
+        });
+    }
+
+    private void finish(LatLng origin, List<Restaurant> candidates, Calendar iftar, int[] seconds,
+                        LatLng timesOrigin, long timesAt, FeasibilityCallback callback) {
+        executor.execute(() -> {
+            Result result = compute(origin, candidates, iftar, seconds, System.currentTimeMillis(),
+                    timesOrigin, timesAt);
+            lastResult = result;
+            callback.onFeasibilityComputed(result);
+        });
+    }
+
+    /**
+     * Computes arrival, slack and opening state of every candidate in one pass
+     */
+    private static Result compute(LatLng origin, List<Restaurant> candidates, Calendar iftar,
+                                  int[] seconds, long now, LatLng timesOrigin, long timesAt) {
+        int n = candidates.size();
+        long maghribMillis = iftar.getTimeInMillis();
+        long[] arrivals = new long[n];
+        int[] slack = new int[n];
+        boolean[] openAtArrival = new boolean[n];
+        boolean[] feasible = new boolean[n];
+        boolean[] estimated = new boolean[n];
+        boolean[] hoursKnown = new boolean[n];
+        Calendar arrival = (Calendar) iftar.clone();
+
+        for (int i = 0; i < n; i++) {
+            Restaurant restaurant = candidates.get(i);
+            int travel = seconds[i];
+            if (travel == NavigationManager.TRAVEL_TIME_UNKNOWN) {
+                double meters = GeoHash.distanceMeters(origin.latitude, origin.longitude,
+                        restaurant.getLatitude(), restaurant.getLongitude());
+                travel = (int) (meters * FALLBACK_DETOUR_FACTOR / FALLBACK_SPEED_MPS);
+                seconds[i] = travel;
+                estimated[i] = true;
+            }
+
+            arrivals[i] = now + travel * 1000L;
+            slack[i] = (int) ((maghribMillis - arrivals[i]) / 1000);
+
+            WeeklyOpeningHours hours = restaurant.getWeeklyHours();
+            if (hours != null) {
+                arrival.setTimeInMillis(arrivals[i]);
+                openAtArrival[i] = hours.isOpenAt(arrival);
+                hoursKnown[i] = true;
+                feasible[i] = slack[i] >= 0 && hours.isOpenThroughout(iftar,
+                        RestaurantManager.IFTAR_WINDOW_MINUTES);
+            } else {
+                feasible[i] = slack[i] >= 0;
+            }
+        }
+
+        int[] order = NavigationManager.rankByArrival(seconds, now, iftar);
+        return new Result(timesOrigin, timesAt, iftar, candidates, seconds, arrivals, slack,
+                openAtArrival, feasible, estimated, hoursKnown, order);
+    }
+
+    /**
+     * Returns every candidate, nearest to the origin first
+     */
+    private static List<Restaurant> byDistance(List<Restaurant> candidates, LatLng origin) {
+        int n = candidates.size();
+        double[] distances = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Restaurant restaurant = candidates.get(i);
+            distances[i] = GeoHash.distanceMeters(origin.latitude, origin.longitude,
+                    restaurant.getLatitude(), restaurant.getLongitude());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+        List<Restaurant> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(candidates.get(order[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Feasibility of a set of candidates, by candidate index
+     */
+    public static class Result {
+        // Where and when the oldest travel times in this result were fetched
+        private final LatLng timesOrigin;
+        private final long timesAt;
+        private final Calendar maghrib;
+        private final List<Restaurant> restaurants;
+        private final int[] travelSeconds;
+        private final long[] arrivals;
+        private final int[] slack;
+        private final boolean[] openAtArrival;
+        private final boolean[] feasible;
+        private final boolean[] estimated;
+        private final boolean[] hoursKnown;
+        private final int[] rankedOrder;
+
+        Result(LatLng timesOrigin, long timesAt, Calendar maghrib, List<Restaurant> restaurants,
+               int[] travelSeconds, long[] arrivals, int[] slack, boolean[] openAtArrival,
+               boolean[] feasible, boolean[] estimated, boolean[] hoursKnown, int[] rankedOrder) {
+            this.timesOrigin = timesOrigin;
+            this.timesAt = timesAt;
+            this.maghrib = maghrib;
+            this.restaurants = Collections.unmodifiableList(restaurants);
+            this.travelSeconds = travelSeconds;
+            this.arrivals = arrivals;
+            this.slack = slack;
+            this.openAtArrival = openAtArrival;
+            this.feasible = feasible;
+            this.estimated = estimated;
+            this.hoursKnown = hoursKnown;
+            this.rankedOrder = rankedOrder;
+        }
+
+        public List<Restaurant> getRestaurants() { return restaurants; }
+        public int size() { return restaurants.size(); }
+        public Calendar getMaghrib() { return (Calendar) maghrib.clone(); }
+        public long getArrivalMillis(int index) { return arrivals[index]; }
+        public int getSlackSeconds(int index) { return slack[index]; }
+        public boolean isFeasible(int index) { return feasible[index]; }
+        public boolean isEstimated(int index) { return estimated[index]; }
+        public boolean isHoursKnown(int index) { return hoursKnown[index]; }
+
+        /**
+         * Whether the restaurant is open at arrival, always false when its hours are unknown
+         */
+        public boolean isOpenAtArrival(int index) { return openAtArrival[index]; }
+
+        /**
+         * Feasible restaurants, soonest arrival first, including those with unknown hours
+         */
+        public List<Restaurant> getFeasibleRestaurants() {
+            List<Restaurant> result = new ArrayList<>();
+            for (int index : rankedOrder) {
+                if (feasible[index]) {
+                    result.add(restaurants.get(index));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Whether the travel times of this result still hold for an evaluation
+         */
+        boolean canReuse(LatLng origin, Calendar maghrib, long now) {
+            if (now - timesAt > CACHE_MAX_AGE_MS) return false;
+            if (this.maghrib.getTimeInMillis() != maghrib.getTimeInMillis()) return false;
+            return GeoHash.distanceMeters(timesOrigin.latitude, timesOrigin.longitude,
+                    origin.latitude, origin.longitude) <= CACHE_MAX_DISTANCE_METERS;
+        }
+
+        /**
+         * Whether this result judged exactly these candidates, in this order
+         */
+        boolean hasCandidates(List<Restaurant> candidates) {
+            if (candidates.size() != restaurants.size()) return false;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (!candidates.get(i).getId().equals(restaurants.get(i).getId())) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Travel times the matrix answered, by place ID, leaving out straight-line estimates
+         */
+        Map<String, Integer> getKnownTravelTimes() {
+            Map<String, Integer> known = new HashMap<>(restaurants.size() * 2);
+            for (int i = 0; i < restaurants.size(); i++) {
+                if (!estimated[i]) {
+                    known.put(restaurants.get(i).getId(), travelSeconds[i]);
+                }
+            }
+            return known;
+        }
+    }
+}
@@ -3,12 +3,11 @@ package com.ramadan.sabil23;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.FrameLayout;
@@ -16,6 +15,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -26,32 +26,61 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.Marker;
-import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.libraries.places.api.Places;
 import com.google.android.libraries.places.api.net.PlacesClient;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.maps.android.clustering.ClusterManager;
+import com.ramadan.sabil23.model.Restaurant;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 
 public class MainActivity extends AppCompatActivity implements OnMapReadyCallback {
     private static final String TAG = "MainActivity";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
     private static final float DEFAULT_ZOOM = 15f;
-    private static final int DEFAULT_SEARCH_RADIUS = 5000; // 5km
+    private static final int TARGET_RESULT_COUNT = 10;
+    private static final int TOP_PICKS_COUNT = 5;
+    private static final int CLUSTER_ZOOM_PADDING = 100;
+
+    // Panning searches the newly exposed area once the camera has settled
+    private static final long AREA_SEARCH_DEBOUNCE_MS = 600;
+    private static final float MIN_AREA_SEARCH_ZOOM = 13f;
+    private static final int MAX_AREA_SEARCH_CELLS = 9;
+
+    // Place Details requests the Iftar filter of area results may send per camera idle
+    private static final int MAX_AREA_HOURS_LOOKUPS = 20;
+
+    // Zoomed out past this, a heatmap replaces the restaurant markers
+    private static final float HEATMAP_MAX_ZOOM = 12f;
+
+    // Facets offered in the filter dialog
+    private static final int[] FILTER_FACETS = {
+            RestaurantFacetIndex.FACET_OPEN_NOW,
+            RestaurantFacetIndex.FACET_HALAL,
+            RestaurantFacetIndex.FACET_IFTAR_SPECIAL,
+            RestaurantFacetIndex.FACET_RATING_4_PLUS,
+            RestaurantFacetIndex.FACET_PRICE_INEXPENSIVE,
+            RestaurantFacetIndex.FACET_PRICE_MODERATE,
+            RestaurantFacetIndex.FACET_PRICE_EXPENSIVE,
+            RestaurantFacetIndex.FACET_PRICE_VERY_EXPENSIVE
+    };
+    private static final String[] FILTER_LABELS = {
+            "Open now", "Likely halal", "Iftar special", "Rated 4+", "$", "$$", "$$$", "$$$$"
+    };
 
     // UI elements
     private GoogleMap mMap;
     private EditText destinationInput;
     private TextView restaurantCountText;
     private FloatingActionButton refreshButton;
+    private FloatingActionButton filterButton;
     private FloatingActionButton myLocationButton;
     private FrameLayout loadingIndicator;
 
@@ -67,9 +96,47 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     private NavigationManager navigationManager;
     private SearchManager searchManager;
 
-    // Restaurant markers
-    private Map<String, Marker> restaurantMarkers = new HashMap<>();
-    private List<RestaurantManager.Restaurant> nearbyRestaurants = new ArrayList<>();
+    // Restaurant markers, clustered and keyed by place ID
+    private ClusterManager<Restaurant> clusterManager;
+    private ViewportMaterializer viewportMaterializer;
+    private RestaurantHeatmap heatmap;
+    private MarkerReconciler markerReconciler;
+    private MarkerIconRenderer iconRenderer;
+    private RestaurantInfoWindowAdapter infoWindowAdapter;
+
+    // Restaurants the active filter or the Maghrib check keep out of the clusters
+    private Set<String> hiddenRestaurants = new HashSet<>();
+
+    // Restaurants that cannot be reached before Maghrib, and how many can (-1 if unchecked)
+    private Set<String> unreachableRestaurants = new HashSet<>();
+    private int reachableCount = -1;
+    private int unknownHoursCount;
+    private List<Restaurant> nearbyRestaurants = new ArrayList<>();
+    private RestaurantManager.AdaptiveSearch activeSearch;
+    private int searchGeneration;
+    private RestaurantRanker.Session rankingSession;
+    private Restaurant topPick;
+    private int searchRadius;
+    private boolean searchFinished;
+
+    // Rings of the running search not on the map yet, and the completion waiting for them
+    private int pendingRings;
+    private Runnable pendingCompletion;
+
+    // Searches still running for the cells exposed by panning
+    private final List<RestaurantManager.AdaptiveSearch> areaSearches = new ArrayList<>();
+    private final Handler areaSearchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable areaSearchRunnable = this::searchVisibleArea;
+
+    // Place Details lookups left for the area results of this camera idle
+    private int areaHoursLookups;
+
+    // Result batches still being applied a few restaurants per frame
+    private final List<UiWorkScheduler.Task<Restaurant>> markerWork = new ArrayList<>();
+
+    // Local filtering over the loaded restaurants
+    private RestaurantFacetIndex facetIndex = new RestaurantFacetIndex();
+    private long activeFilter;
 
     // Prayer times
     private PrayerTimesCalculator prayerTimesCalculator;
@@ -85,6 +152,7 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         destinationInput = findViewById(R.id.destinationInput);
         restaurantCountText = findViewById(R.id.restaurantCountText);
         refreshButton = findViewById(R.id.refreshButton);
+        filterButton = findViewById(R.id.filterButton);
         myLocationButton = findViewById(R.id.myLocationButton);
         loadingIndicator = findViewById(R.id.loadingIndicator);
 
@@ -99,6 +167,8 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
 
         // Initialize managers
         restaurantManager = RestaurantManager.getInstance(this);
+        iconRenderer = MarkerIconRenderer.getInstance(this);
+        infoWindowAdapter = new RestaurantInfoWindowAdapter(this);
         navigationManager = NavigationManager.getInstance(this);
         searchManager = SearchManager.getInstance(this, placesClient);
 
@@ -173,6 +243,8 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         // Refresh button click
         refreshButton.setOnClickListener(v -> {
             if (currentLocation != null) {
+                // A manual refresh always goes back to the network, for panned areas too
+                restaurantManager.getSpatialIndex().clearCoverage();
                 searchNearbyRestaurants();
             } else {
                 Toast.makeText(MainActivity.this, "Location not available", Toast.LENGTH_SHORT).show();
@@ -180,6 +252,9 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
             }
         });
 
+        // Filter button click
+        filterButton.setOnClickListener(v -> showFilterDialog());
+
         // My location button click
         myLocationButton.setOnClickListener(v -> {
             if (currentLocation != null) {
@@ -201,52 +276,73 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         mMap.getUiSettings().setZoomControlsEnabled(true);
         mMap.getUiSettings().setMyLocationButtonEnabled(false);
 
-        // Set up info window adapter
-        mMap.setInfoWindowAdapter(new GoogleMap.InfoWindowAdapter() {
+        // Restaurants not yet confirmed by the running search are drawn faded
+        clusterManager = RestaurantClusterRenderer.createClusterManager(this, mMap,
+                restaurant -> !markerReconciler.isConfirmed(restaurant.getId()));
+
+        // Only restaurants around the viewport are handed to the cluster manager
+        viewportMaterializer = new ViewportMaterializer(mMap, clusterManager, iconRenderer);
+        viewportMaterializer.setMinZoom(HEATMAP_MAX_ZOOM);
+        heatmap = new RestaurantHeatmap(mMap, restaurantManager.getColumnStore());
+        markerReconciler = new MarkerReconciler(new MarkerReconciler.Target() {
             @Override
-            public View getInfoWindow(Marker marker) {
-                return null; // Use default window frame
+            public void add(Restaurant restaurant) {
+                if (!hiddenRestaurants.contains(restaurant.getId())) {
+                    viewportMaterializer.add(restaurant);
+                }
             }
 
             @Override
-            public View getInfoContents(Marker marker) {
-                // Get restaurant data from marker tag
-                RestaurantManager.Restaurant restaurant = (RestaurantManager.Restaurant) marker.getTag();
-                if (restaurant == null) return null;
-
-                // Inflate custom info window layout
-                View view = LayoutInflater.from(MainActivity.this).inflate(
-                        R.layout.bottom_sheet_restaurant, null);
-
-                // Set restaurant details
-                TextView nameTextView = view.findViewById(R.id.restaurant_name);
-                TextView statusTextView = view.findViewById(R.id.restaurant_status);
-                TextView addressTextView = view.findViewById(R.id.restaurant_address);
-                TextView ratingTextView = view.findViewById(R.id.restaurant_rating);
-
-                nameTextView.setText(restaurant.getName());
-                statusTextView.setText(restaurant.isOpenNow() ?
-                        "Open Now" : "Closed");
-                addressTextView.setText(restaurant.getAddress());
-
-                if (restaurant.getRating() > 0) {
-                    ratingTextView.setText(String.format("%.1f ★", restaurant.getRating()));
-                    ratingTextView.setVisibility(View.VISIBLE);
+            public void update(Restaurant shown, Restaurant restaurant, boolean iconChanged) {
+                if (hiddenRestaurants.contains(restaurant.getId())) {
+                    viewportMaterializer.remove(shown);
+                } else {
+                    viewportMaterializer.update(shown, restaurant, iconChanged);
                 }
+            }
+
+            @Override
+            public void remove(Restaurant restaurant) {
+                viewportMaterializer.remove(restaurant);
+            }
 
-                return view;
+            @Override
+            public void commit() {
+                viewportMaterializer.commit();
             }
         });
 
+        // Clustering follows the camera and the newly exposed area is searched,
+        // markers and info windows go through the cluster manager
+        mMap.setOnCameraIdleListener(() -> {
+            viewportMaterializer.onCameraIdle();
+            heatmap.setVisible(viewportMaterializer.isSuspended());
+            scheduleAreaSearch();
+        });
+        mMap.setOnMarkerClickListener(clusterManager);
+        mMap.setInfoWindowAdapter(clusterManager.getMarkerManager());
+
+        // Set up info window adapter, its view is reused across taps
+        clusterManager.getMarkerCollection().setInfoWindowAdapter(infoWindowAdapter);
+
         // Set marker click listener
-        mMap.setOnMarkerClickListener(marker -> {
-            RestaurantManager.Restaurant restaurant = (RestaurantManager.Restaurant) marker.getTag();
-            if (restaurant != null) {
-                showRestaurantDetails(restaurant);
-            }
+        clusterManager.setOnClusterItemClickListener(restaurant -> {
+            // The renderer hands back the copy the marker was created for, use the latest
+            Restaurant latest = markerReconciler.get(restaurant.getId());
+            showRestaurantDetails(latest != null ? latest : restaurant);
             return false; // Allow default behavior (showing info window)
         });
 
+        // Zoom into a cluster when it is tapped
+        clusterManager.setOnClusterClickListener(cluster -> {
+            LatLngBounds.Builder bounds = new LatLngBounds.Builder();
+            for (Restaurant restaurant : cluster.getItems()) {
+                bounds.include(restaurant.getPosition());
+            }
+            mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds.build(), CLUSTER_ZOOM_PADDING));
+            return true;
+        });
+
         // Check for location permission
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED) {
@@ -282,8 +378,9 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
                             // Initialize prayer times calculator
                             initializePrayerTimes(location.getLatitude(), location.getLongitude());
 
-                            // Search for nearby restaurants
+                            // Search for nearby restaurants, showing the last results meanwhile
                             searchNearbyRestaurants();
+                            showLastResults(latLng, searchGeneration);
                         } else {
                             Toast.makeText(MainActivity.this,
                                     "Unable to get current location", Toast.LENGTH_SHORT).show();
@@ -297,6 +394,35 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         }
     }
 
+    /**
+     * Shows the restaurants found near here on a previous launch, faded until the running
+     * search confirms them. They stay on the map if the search fails.
+     */
+    private void showLastResults(LatLng location, int generation) {
+        restaurantManager.loadLastResults(location, new RestaurantManager.RestaurantSearchCallback() {
+            @Override
+            public void onRestaurantsFound(List<Restaurant> restaurants) {
+                infoWindowAdapter.precompute(restaurants);
+                iconRenderer.prepareIcons(restaurants, () -> {
+                    // Too late if the search already finished or was replaced
+                    if (generation != searchGeneration || searchFinished) return;
+
+                    markerReconciler.show(restaurants);
+
+                    if (nearbyRestaurants.isEmpty() && markerReconciler.unconfirmedCount() > 0) {
+                        restaurantCountText.setText("Showing " + markerReconciler.unconfirmedCount()
+                                + " saved restaurants, updating...");
+                    }
+                });
+            }
+
+            @Override
+            public void onSearchFailed(String errorMessage) {
+                Log.w(TAG, "Could not load last results: " + errorMessage);
+            }
+        });
+    }
+
     /**
      * Initializes prayer times calculator and schedules notifications
      */
@@ -324,144 +450,468 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     }
 
     /**
-     * Searches for nearby restaurants
+     * Searches for nearby restaurants, widening the radius only where results are sparse
      */
     private void searchNearbyRestaurants() {
         if (currentLocation == null) return;
 
         loadingIndicator.setVisibility(View.VISIBLE);
-        restaurantCountText.setText("Searching for restaurants within 5km...");
+        restaurantCountText.setText("Searching for nearby restaurants...");
 
-        // Clear existing markers
-        for (Marker marker : restaurantMarkers.values()) {
-            marker.remove();
+        // Stop any search that is still expanding
+        if (activeSearch != null) {
+            activeSearch.cancel();
         }
-        restaurantMarkers.clear();
+        cancelAreaSearches();
+        cancelMarkerWork();
+
+        // Keep the current markers until the search confirms or drops them
+        markerReconciler.beginPass();
         nearbyRestaurants.clear();
 
+        // Texts are formatted again as results arrive, markers kept meanwhile format on tap
+        infoWindowAdapter.clear();
+        facetIndex = new RestaurantFacetIndex();
+        unreachableRestaurants.clear();
+        reachableCount = -1;
+        unknownHoursCount = 0;
+        searchFinished = false;
+        pendingRings = 0;
+        pendingCompletion = null;
+
         // Get current location as LatLng
-        LatLng location = new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude());
-
-        // Search for restaurants open during Iftar time
-        if (iftarTime != null && Calendar.getInstance().before(iftarTime)) {
-            // If it's before Iftar time, search for restaurants open during Iftar
-            restaurantManager.searchRestaurantsOpenDuringIftar(
-                    location, iftarTime, DEFAULT_SEARCH_RADIUS,
-                    RestaurantManager.TYPE_ALL, RestaurantManager.PRICE_ANY,
-                    new RestaurantManager.RestaurantSearchCallback() {
-                        @Override
-                        public void onRestaurantsFound(List<RestaurantManager.Restaurant> restaurants) {
-                            runOnUiThread(() -> {
-                                loadingIndicator.setVisibility(View.GONE);
-                                handleRestaurantSearchResults(restaurants);
-                            });
-                        }
+        final LatLng location = new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude());
 
-                        @Override
-                        public void onSearchFailed(String errorMessage) {
-                            runOnUiThread(() -> {
-                                loadingIndicator.setVisibility(View.GONE);
-                                Toast.makeText(MainActivity.this,
-                                        "Error searching restaurants: " + errorMessage, Toast.LENGTH_SHORT).show();
+        // Rank restaurants incrementally as rings arrive
+        if (rankingSession != null) {
+            rankingSession.cancel();
+        }
+        topPick = null;
+
+        // Before Iftar, look for restaurants that will be open at Maghrib rather than right now
+        final Calendar iftar = iftarTime;
+        final boolean beforeIftar = iftar != null && Calendar.getInstance().before(iftar);
+        final int generation = ++searchGeneration;
+        rankingSession = RestaurantRanker.getInstance().newSession(
+                TOP_PICKS_COUNT, RestaurantManager.SORT_COMPOSITE, new RestaurantRanker.Weights(),
+                beforeIftar ? iftar : null,
+                topRestaurants -> runOnUiThread(() -> {
+                    if (generation != searchGeneration || topRestaurants.isEmpty()) return;
+                    topPick = topRestaurants.get(0);
+                    updateRestaurantCountText();
+                }));
+
+        // Each ring is shown as soon as it arrives
+        activeSearch = restaurantManager.searchNearbyRestaurantsAdaptive(
+                location, RestaurantManager.TYPE_ALL, RestaurantManager.PRICE_ANY, !beforeIftar,
+                TARGET_RESULT_COUNT, RestaurantManager.ADAPTIVE_MAX_RADIUS,
+                new RestaurantManager.AdaptiveSearchCallback() {
+                    @Override
+                    public void onRingLoaded(List<Restaurant> newRestaurants, int radius) {
+                        // Counted on the main thread before the completion posted after it
+                        runOnUiThread(() -> {
+                            if (generation != searchGeneration) return;
+                            pendingRings++;
+                            Runnable onShown = () -> onRingShown(generation);
+
+                            if (!beforeIftar) {
+                                showRing(generation, newRestaurants, newRestaurants, radius,
+                                        UiWorkScheduler.PRIORITY_NORMAL, onShown);
+                                return;
+                            }
+
+                            restaurantManager.filterOpenDuringIftar(newRestaurants, iftar,
+                                    new RestaurantManager.RestaurantSearchCallback() {
+                                        @Override
+                                        public void onRestaurantsFound(List<Restaurant> restaurants) {
+                                            showRing(generation, newRestaurants, restaurants, radius,
+                                                    UiWorkScheduler.PRIORITY_NORMAL, onShown);
+                                        }
+
+                                        @Override
+                                        public void onSearchFailed(String errorMessage) {
+                                            Log.w(TAG, "Iftar filtering failed: " + errorMessage);
+                                            runOnUiThread(onShown);
+                                        }
+                                    });
+                        });
+                    }
+
+                    @Override
+                    public void onSearchComplete(List<Restaurant> restaurants, int radius) {
+                        runOnUiThread(() -> {
+                            if (generation != searchGeneration) return;
+
+                            // Finish once the rings delivered before are on the map
+                            if (pendingRings > 0) {
+                                pendingCompletion = () -> finishSearch(location, restaurants, radius);
+                            } else {
+                                finishSearch(location, restaurants, radius);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onSearchFailed(String errorMessage) {
+                        runOnUiThread(() -> {
+                            if (generation != searchGeneration) return;
+                            searchFinished = true;
+                            loadingIndicator.setVisibility(View.GONE);
+                            Toast.makeText(MainActivity.this,
+                                    "Error searching restaurants: " + errorMessage, Toast.LENGTH_SHORT).show();
+
+                            // Keep the earlier restaurants, they are better than an empty map
+                            int unconfirmed = markerReconciler.unconfirmedCount();
+                            if (unconfirmed == 0) {
                                 restaurantCountText.setText("Error searching restaurants");
-                            });
+                            } else {
+                                restaurantCountText.setText("Showing " + unconfirmed
+                                        + " saved restaurants, could not update");
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Finishes the nearby search once every ring it delivered has been applied
+     */
+    private void finishSearch(LatLng location, List<Restaurant> restaurants, int radius) {
+        searchFinished = true;
+        loadingIndicator.setVisibility(View.GONE);
+
+        // Every ring is on the map, restaurants the network no longer returns are gone
+        markerReconciler.endPass(restaurants);
+
+        if (restaurants.isEmpty()) {
+            restaurantCountText.setText("No restaurants found nearby");
+        } else if (!nearbyRestaurants.isEmpty()) {
+            // An empty set would replace the one saved for this place
+            restaurantManager.saveLastResults(location, nearbyRestaurants);
+            checkReachability();
+        }
+
+        // Panning only searches what the network coverage does not hold yet
+        scheduleAreaSearch();
+        heatmap.refresh();
+    }
+
+    /**
+     * Counts a ring of the running search as applied, running the completion after the last
+     */
+    private void onRingShown(int generation) {
+        if (generation != searchGeneration) return;
+        pendingRings--;
+        if (pendingRings == 0 && pendingCompletion != null) {
+            Runnable completion = pendingCompletion;
+            pendingCompletion = null;
+            completion.run();
+        }
+    }
+
+    /**
+     * Shows the restaurants of one search ring unless a newer search has started.
+     * Delivered restaurants that were filtered out lose their earlier markers. onShown,
+     * if not null, runs once the whole ring has been applied.
+     */
+    private void showRing(int generation, List<Restaurant> delivered, List<Restaurant> restaurants,
+                          int radius, int priority, Runnable onShown) {
+        // Icons are drawn in the background, markers are added once they are ready
+        infoWindowAdapter.precompute(restaurants);
+        iconRenderer.prepareIcons(restaurants, () -> {
+            if (generation != searchGeneration) return;
+
+            loadingIndicator.setVisibility(View.GONE);
+            rankingSession.offer(restaurants);
+            searchRadius = radius;
+
+            // The bookkeeping of a large ring is spread over frames, the cluster manager
+            // only reclusters and renders the markers once the whole ring is in
+            markerWork.removeIf(task -> task.isDone() || task.isCancelled());
+            markerWork.add(UiWorkScheduler.getInstance().submit(restaurants, priority,
+                    this::handleRestaurantSearchResults, () -> {
+                        // Commits every restaurant the ring confirmed
+                        markerReconciler.removeUnconfirmed(delivered);
+                        updateRestaurantCountText();
+
+                        // Restaurants landing after the search finished are checked too
+                        if (searchFinished) {
+                            checkReachability();
                         }
-                    });
-        } else {
-            // Otherwise, search for all open restaurants
+                        if (onShown != null) {
+                            onShown.run();
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * Stops adding the markers of an earlier search
+     */
+    private void cancelMarkerWork() {
+        for (UiWorkScheduler.Task<Restaurant> task : markerWork) {
+            task.cancel();
+        }
+        markerWork.clear();
+    }
+
+    /**
+     * Searches the visible area once the camera has been idle for AREA_SEARCH_DEBOUNCE_MS
+     */
+    private void scheduleAreaSearch() {
+        areaSearchHandler.removeCallbacks(areaSearchRunnable);
+        areaSearchHandler.postDelayed(areaSearchRunnable, AREA_SEARCH_DEBOUNCE_MS);
+    }
+
+    /**
+     * Stops the area searches of an earlier viewport
+     */
+    private void cancelAreaSearches() {
+        areaSearchHandler.removeCallbacks(areaSearchRunnable);
+        for (RestaurantManager.AdaptiveSearch search : areaSearches) {
+            search.cancel();
+        }
+        areaSearches.clear();
+    }
+
+    /**
+     * Searches the cells of the visible area that were not searched on the network
+     * recently. Searches still running for the previous viewport are cancelled, cells
+     * they did not finish are searched again if they are still visible. A cell only
+     * counts as searched once the network answered for it, results served from storage
+     * after a network error leave it to be searched again.
+     */
+    private void searchVisibleArea() {
+        // The nearby search covers the start, and far out views hold too many cells
+        if (mMap == null || !searchFinished || mMap.getCameraPosition().zoom < MIN_AREA_SEARCH_ZOOM) {
+            return;
+        }
+        cancelAreaSearches();
+        areaHoursLookups = MAX_AREA_HOURS_LOOKUPS;
+
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        List<SearchGrid.Cell> cells = SearchGrid.uncoveredCells(restaurantManager.getSpatialIndex(),
+                bounds.southwest.latitude, bounds.southwest.longitude,
+                bounds.northeast.latitude, bounds.northeast.longitude, MAX_AREA_SEARCH_CELLS);
+
+        final Calendar iftar = iftarTime;
+        final boolean beforeIftar = iftar != null && Calendar.getInstance().before(iftar);
+        final int generation = searchGeneration;
+        for (SearchGrid.Cell cell : cells) {
+            // Fetch every restaurant, only an unfiltered network answer covers the cell
+            RestaurantManager.AdaptiveSearch search = new RestaurantManager.AdaptiveSearch();
+            areaSearches.add(search);
             restaurantManager.searchNearbyRestaurants(
-                    location, DEFAULT_SEARCH_RADIUS,
-                    RestaurantManager.TYPE_ALL, RestaurantManager.PRICE_ANY, true,
+                    new LatLng(cell.getLatitude(), cell.getLongitude()), cell.getRadius(),
+                    RestaurantManager.TYPE_ALL, RestaurantManager.PRICE_ANY, false, search,
                     new RestaurantManager.RestaurantSearchCallback() {
                         @Override
-                        public void onRestaurantsFound(List<RestaurantManager.Restaurant> restaurants) {
+                        public void onRestaurantsFound(List<Restaurant> restaurants) {
                             runOnUiThread(() -> {
-                                loadingIndicator.setVisibility(View.GONE);
-                                handleRestaurantSearchResults(restaurants);
+                                if (search.isCancelled() || generation != searchGeneration) return;
+                                areaSearches.remove(search);
+                                showAreaResults(generation, restaurants, beforeIftar, iftar);
                             });
                         }
 
                         @Override
                         public void onSearchFailed(String errorMessage) {
-                            runOnUiThread(() -> {
-                                loadingIndicator.setVisibility(View.GONE);
-                                Toast.makeText(MainActivity.this,
-                                        "Error searching restaurants: " + errorMessage, Toast.LENGTH_SHORT).show();
-                                restaurantCountText.setText("Error searching restaurants");
-                            });
+                            Log.w(TAG, "Area search failed: " + errorMessage);
+                            runOnUiThread(() -> areaSearches.remove(search));
                         }
                     });
         }
     }
 
     /**
-     * Handles restaurant search results
+     * Shows the restaurants of an area search that are not on the map yet, filtered the
+     * same way as the nearby search
      */
-    private void handleRestaurantSearchResults(List<RestaurantManager.Restaurant> restaurants) {
-        nearbyRestaurants = restaurants;
+    private void showAreaResults(int generation, List<Restaurant> restaurants,
+                                 boolean beforeIftar, Calendar iftar) {
+        List<Restaurant> delivered = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            if (!markerReconciler.isConfirmed(restaurant.getId())) {
+                delivered.add(restaurant);
+            }
+        }
+        if (delivered.isEmpty()) return;
 
-        // Update restaurant count text
-        if (restaurants.isEmpty()) {
-            restaurantCountText.setText("No restaurants found nearby");
-        } else {
-            restaurantCountText.setText(restaurants.size() + " restaurants found nearby");
+        if (!beforeIftar) {
+            List<Restaurant> open = new ArrayList<>();
+            for (Restaurant restaurant : delivered) {
+                if (restaurant.isOpenNow()) {
+                    open.add(restaurant);
+                }
+            }
+            showRing(generation, delivered, open, searchRadius, UiWorkScheduler.PRIORITY_LOW, null);
+            return;
         }
 
-        // Add markers for each restaurant
-        for (RestaurantManager.Restaurant restaurant : restaurants) {
-            // Create custom marker
-            View markerView = LayoutInflater.from(this).inflate(R.layout.custom_marker, null);
-            TextView nameTextView = markerView.findViewById(R.id.marker_name);
-            TextView ratingTextView = markerView.findViewById(R.id.marker_rating);
+        // Share the lookups of this camera idle between its cells, hours already known
+        // locally do not need one
+        int lookups = areaHoursLookups;
+        int unknown = 0;
+        for (Restaurant restaurant : delivered) {
+            if (!restaurant.hasDetails()) unknown++;
+        }
+        areaHoursLookups -= Math.min(lookups, unknown);
 
-            nameTextView.setText(restaurant.getName());
+        restaurantManager.filterOpenDuringIftar(delivered, iftar, lookups,
+                new RestaurantManager.RestaurantSearchCallback() {
+                    @Override
+                    public void onRestaurantsFound(List<Restaurant> filtered) {
+                        showRing(generation, delivered, filtered, searchRadius, UiWorkScheduler.PRIORITY_LOW,
+                                null);
+                    }
 
-            if (restaurant.getRating() > 0) {
-                ratingTextView.setText(String.format("%.1f", restaurant.getRating()));
-            } else {
-                ratingTextView.setVisibility(View.GONE);
+                    @Override
+                    public void onSearchFailed(String errorMessage) {
+                        Log.w(TAG, "Iftar filtering failed: " + errorMessage);
+                    }
+                });
+    }
+
+    /**
+     * Shows how many restaurants were found and the best ranked one
+     */
+    private void updateRestaurantCountText() {
+        String text = nearbyRestaurants.size() + " restaurants found within "
+                + RestaurantManager.formatDistance(searchRadius);
+        if (activeFilter != 0) {
+            text += " (" + facetIndex.count(activeFilter) + " match filters)";
+        }
+        if (reachableCount >= 0) {
+            text += "\n" + reachableCount + " reachable before Maghrib";
+            if (unknownHoursCount > 0) {
+                text += " (" + unknownHoursCount + " with unknown hours)";
             }
+        }
+        if (topPick != null) {
+            text += "\nTop pick: " + topPick.getName();
+        }
+        restaurantCountText.setText(text);
+    }
 
-            // Convert view to bitmap
-            Bitmap markerBitmap = createBitmapFromView(markerView);
+    /**
+     * Before Iftar, hides the restaurants that cannot be reached and stay open in time
+     */
+    private void checkReachability() {
+        final Calendar iftar = iftarTime;
+        if (currentLocation == null || iftar == null || !Calendar.getInstance().before(iftar)
+                || nearbyRestaurants.isEmpty()) {
+            return;
+        }
 
-            // Add marker to map
-            MarkerOptions markerOptions = new MarkerOptions()
-                    .position(restaurant.getLatLng())
-                    .icon(BitmapDescriptorFactory.fromBitmap(markerBitmap))
-                    .anchor(0.5f, 1.0f);
+        final int generation = searchGeneration;
+        LatLng origin = new LatLng(currentLocation.getLatitude(), currentLocation.getLongitude());
+        IftarFeasibilityEngine.getInstance(this).evaluate(origin, nearbyRestaurants, iftar,
+                result -> {
+                    List<Restaurant> feasible = result.getFeasibleRestaurants();
+                    runOnUiThread(() -> {
+                        if (generation != searchGeneration) return;
+
+                        unreachableRestaurants.clear();
+                        unknownHoursCount = 0;
+                        for (int i = 0; i < result.size(); i++) {
+                            if (!result.isFeasible(i)) {
+                                unreachableRestaurants.add(result.getRestaurants().get(i).getId());
+                            } else if (!result.isHoursKnown(i)) {
+                                unknownHoursCount++;
+                            }
+                        }
+                        reachableCount = feasible.size();
+                        applyFilter(activeFilter);
+                    });
+                });
+    }
 
-            Marker marker = mMap.addMarker(markerOptions);
-            marker.setTag(restaurant);
+    /**
+     * Confirms restaurants delivered by a search ring, markers already on the map are
+     * reused. Restaurants this search already showed are skipped. The cluster manager is
+     * not committed, that happens once per ring.
+     */
+    private void handleRestaurantSearchResults(List<Restaurant> delivered) {
+        FrameMetricsMonitor frameMonitor = FrameMetricsMonitor.getInstance(this);
+        frameMonitor.beginOperation(FrameMetricsMonitor.OP_MARKER_ADD);
+
+        List<Restaurant> restaurants = new ArrayList<>(delivered.size());
+        for (Restaurant restaurant : delivered) {
+            if (!markerReconciler.isConfirmed(restaurant.getId())) {
+                restaurants.add(restaurant);
+            }
+        }
+        nearbyRestaurants.addAll(restaurants);
 
-            restaurantMarkers.put(restaurant.getId(), marker);
+        for (Restaurant restaurant : restaurants) {
+            int index = facetIndex.add(restaurant);
+            if (facetIndex.matches(index, activeFilter)
+                    && !unreachableRestaurants.contains(restaurant.getId())) {
+                hiddenRestaurants.remove(restaurant.getId());
+            } else {
+                hiddenRestaurants.add(restaurant.getId());
+            }
         }
+        markerReconciler.confirm(restaurants, false);
+        frameMonitor.endOperation(FrameMetricsMonitor.OP_MARKER_ADD);
     }
 
     /**
-     * Creates a bitmap from a view
+     * Shows the filter dialog with the number of restaurants each filter would leave
      */
-    private Bitmap createBitmapFromView(View view) {
-        view.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
-        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    private void showFilterDialog() {
+        int[] counts = facetIndex.facetCounts(activeFilter);
+        String[] labels = new String[FILTER_FACETS.length];
+        boolean[] checked = new boolean[FILTER_FACETS.length];
+        for (int i = 0; i < FILTER_FACETS.length; i++) {
+            labels[i] = FILTER_LABELS[i] + " (" + counts[FILTER_FACETS[i]] + ")";
+            checked[i] = (activeFilter & RestaurantFacetIndex.facet(FILTER_FACETS[i])) != 0;
+        }
 
-        Bitmap bitmap = Bitmap.createBitmap(
-                view.getMeasuredWidth(), view.getMeasuredHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        view.draw(canvas);
+        new AlertDialog.Builder(this)
+                .setTitle("Filter restaurants")
+                .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton("Apply", (dialog, which) -> {
+                    long filter = 0;
+                    for (int i = 0; i < FILTER_FACETS.length; i++) {
+                        if (checked[i]) filter |= RestaurantFacetIndex.facet(FILTER_FACETS[i]);
+                    }
+                    applyFilter(filter);
+                })
+                .setNeutralButton("Clear", (dialog, which) -> applyFilter(0))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
-        return bitmap;
+    /**
+     * Shows only the markers of restaurants passing the filter, without searching again
+     */
+    private void applyFilter(long filter) {
+        activeFilter = filter;
+        for (int i = 0; i < facetIndex.size(); i++) {
+            Restaurant restaurant = markerReconciler.get(facetIndex.get(i).getId());
+            if (restaurant == null) continue;
+
+            // Filtered restaurants leave the clusters so the counts stay right
+            if (facetIndex.matches(i, filter) && !unreachableRestaurants.contains(restaurant.getId())) {
+                if (hiddenRestaurants.remove(restaurant.getId())) viewportMaterializer.add(restaurant);
+            } else {
+                if (hiddenRestaurants.add(restaurant.getId())) viewportMaterializer.remove(restaurant);
+            }
+        }
+        viewportMaterializer.commit();
+        updateRestaurantCountText();
     }
 
     /**
      * Shows restaurant details in a bottom sheet
      */
-    private void showRestaurantDetails(RestaurantManager.Restaurant restaurant) {
+    private void showRestaurantDetails(Restaurant restaurant) {
         // Get detailed information about the restaurant
         restaurantManager.getRestaurantDetails(restaurant.getId(),
                 new RestaurantManager.RestaurantDetailsCallback() {
                     @Override
-                    public void onRestaurantDetailsLoaded(RestaurantManager.Restaurant restaurant) {
+                    public void onRestaurantDetailsLoaded(Restaurant restaurant) {
                         runOnUiThread(() -> {
                             // Create and show bottom sheet dialog with restaurant details
                             RestaurantDetailsBottomSheet bottomSheet =
@@ -500,6 +950,34 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        FrameMetricsMonitor.getInstance(this).attach(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameMetricsMonitor.getInstance(this).detach(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (activeSearch != null) {
+            activeSearch.cancel();
+        }
+        cancelAreaSearches();
+        cancelMarkerWork();
+        if (heatmap != null) {
+            heatmap.release();
+        }
+        if (rankingSession != null) {
+            rankingSession.cancel();
+        }
+    }
+
     /**
      * Gets the current location
      * This method is used by RestaurantDetailsBottomSheet
@@ -0,0 +1,260 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws restaurant marker icons straight onto a Canvas and caches them.
+ *
+ * Icons look like the former custom_marker layout, a rounded label with the name and the
+ * rating, and are drawn without inflating, measuring or laying out views. The label is
+ * pink while the restaurant is open and gray when it is closed. Icons are cached by
+ * (name, rating, state), so markers that look the same share one BitmapDescriptor.
+ * Cluster icons, a circle with the cluster size, are cached by their text.
+ */
+public class MarkerIconRenderer {
+    private static final String TAG = "MarkerIconRenderer";
+
+    // Icon states
+    public static final int STATE_OPEN = 0;
+    public static final int STATE_CLOSED = 1;
+
+    // Cached icons: one per restaurant the cluster manager can hold, so re-rendering the
+    // live markers never misses and draws on the main thread, plus room for the cluster
+    // icons and results being prepared. Live markers keep their descriptors anyway.
+    private static final int CACHE_SIZE = ViewportMaterializer.MAX_LIVE_ITEMS + 64;
+
+    // Dimensions, the same as custom_marker
+    private static final float PADDING_DP = 8;
+    private static final float CORNER_RADIUS_DP = 4;
+    private static final float MAX_NAME_WIDTH_DP = 120;
+    private static final float STAR_SIZE_DP = 16;
+    private static final float STAR_PADDING_DP = 2;
+    private static final float NAME_TEXT_SP = 12;
+    private static final float RATING_TEXT_SP = 10;
+    private static final float CLUSTER_MIN_SIZE_DP = 40;
+    private static final float CLUSTER_STROKE_DP = 2;
+    private static final float CLUSTER_TEXT_SP = 14;
+
+    // Colors
+    private static final int COLOR_OPEN = 0xFFFF1493;
+    private static final int COLOR_CLOSED = 0xFF757575;
+    private static final int COLOR_TEXT = 0xFFFFFFFF;
+    private static final int COLOR_STAR = 0xFFFFD700;
+
+    // Singleton instance
+    private static MarkerIconRenderer instance;
+
+    private final LruCache<String, BitmapDescriptor> cache = new LruCache<>(CACHE_SIZE);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Drawing state, guarded by this
+    private final TextPaint namePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint ratingPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint starPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint clusterPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Path star = new Path();
+    private final RectF rect = new RectF();
+
+    private final float padding;
+    private final float cornerRadius;
+    private final float maxNameWidth;
+    private final float starSize;
+    private final float starPadding;
+    private final float clusterMinSize;
+    private final float clusterStroke;
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized MarkerIconRenderer getInstance(Context context) {
+        if (instance == null) {
+            instance = new MarkerIconRenderer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MarkerIconRenderer(Context context) {
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        padding = PADDING_DP * metrics.density;
+        cornerRadius = CORNER_RADIUS_DP * metrics.density;
+        maxNameWidth = MAX_NAME_WIDTH_DP * metrics.density;
+        starSize = STAR_SIZE_DP * metrics.density;
+        starPadding = STAR_PADDING_DP * metrics.density;
+        clusterMinSize = CLUSTER_MIN_SIZE_DP * metrics.density;
+        clusterStroke = CLUSTER_STROKE_DP * metrics.density;
+
+        namePaint.setColor(COLOR_TEXT);
+        namePaint.setTextSize(NAME_TEXT_SP * metrics.scaledDensity);
+        namePaint.setTypeface(Typeface.DEFAULT_BOLD);
+        ratingPaint.setColor(COLOR_TEXT);
+        ratingPaint.setTextSize(RATING_TEXT_SP * metrics.scaledDensity);
+        starPaint.setColor(COLOR_STAR);
+        clusterPaint.setColor(COLOR_TEXT);
+        clusterPaint.setTextSize(CLUSTER_TEXT_SP * metrics.scaledDensity);
+        clusterPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        clusterPaint.setTextAlign(Paint.Align.CENTER);
+
+        // Five-pointed star filling about the same part of its box as ic_star
+        float outer = starSize * 10 / 24;
+        float inner = outer * 0.382f;
+        for (int i = 0; i < 10; i++) {
+            double angle = Math.PI * i / 5 - Math.PI / 2;
+            float radius = (i & 1) == 0 ? outer : inner;
+            float x = starSize / 2 + (float) (radius * Math.cos(angle));
+            float y = starSize / 2 + (float) (radius * Math.sin(angle));
+            if (i == 0) {
+                star.moveTo(x, y);
+            } else {
+                star.lineTo(x, y);
+            }
+        }
+        star.close();
+    }
+
+    public static int stateOf(Restaurant restaurant) {
+        return restaurant.isOpenNow() ? STATE_OPEN : STATE_CLOSED;
+    }
+
+    /**
+     * Returns the icon for a restaurant, drawing it on the calling thread if it is not
+     * cached. Use prepareIcons() first to keep the drawing off the main thread.
+     */
+    public BitmapDescriptor getIcon(Restaurant restaurant) {
+        String key = keyOf(restaurant);
+        BitmapDescriptor icon = cache.get(key);
+        if (icon == null) {
+            icon = BitmapDescriptorFactory.fromBitmap(
+                    drawIcon(restaurant.getName(), restaurant.getRating(), stateOf(restaurant)));
+            cache.put(key, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Returns the icon for a cluster labelled with text, such as "10+"
+     */
+    public BitmapDescriptor getClusterIcon(String text) {
+        String key = "cluster:" + text;
+        BitmapDescriptor icon = cache.get(key);
+        if (icon == null) {
+            icon = BitmapDescriptorFactory.fromBitmap(drawClusterIcon(text));
+            cache.put(key, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Draws the icons missing from the cache on a background thread, then runs onReady
+     * on the main thread. Calls complete in the order they were made.
+     */
+    public void prepareIcons(List<Restaurant> restaurants, Runnable onReady) {
+        List<Restaurant> missing = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            if (cache.get(keyOf(restaurant)) == null) {
+                missing.add(restaurant);
+            }
+        }
+
+        executor.execute(() -> {
+            for (Restaurant restaurant : missing) {
+                getIcon(restaurant);
+            }
+            mainHandler.post(onReady);
+        });
+    }
+
+    /**
+     * Draws a marker label with the name and, when there is one, the rating
+     */
+    public synchronized Bitmap drawIcon(String name, float rating, int state) {
+        CharSequence label = TextUtils.ellipsize(name != null ? name : "", namePaint,
+                maxNameWidth, TextUtils.TruncateAt.END);
+        Paint.FontMetrics nameMetrics = namePaint.getFontMetrics();
+        float nameHeight = nameMetrics.descent - nameMetrics.ascent;
+        float contentWidth = namePaint.measureText(label, 0, label.length());
+        float contentHeight = nameHeight;
+
+        String ratingText = null;
+        Paint.FontMetrics ratingMetrics = ratingPaint.getFontMetrics();
+        float ratingHeight = Math.max(starSize, ratingMetrics.descent - ratingMetrics.ascent);
+        if (rating > 0) {
+            ratingText = String.format(Locale.getDefault(), "%.1f", rating);
+            contentWidth = Math.max(contentWidth, starSize + starPadding + ratingPaint.measureText(ratingText));
+            contentHeight += ratingHeight;
+        }
+
+        int width = (int) Math.ceil(contentWidth + 2 * padding);
+        int height = (int) Math.ceil(contentHeight + 2 * padding);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        backgroundPaint.setColor(state == STATE_OPEN ? COLOR_OPEN : COLOR_CLOSED);
+        rect.set(0, 0, width, height);
+        canvas.drawRoundRect(rect, cornerRadius, cornerRadius, backgroundPaint);
+
+        canvas.drawText(label, 0, label.length(), padding, padding - nameMetrics.ascent, namePaint);
+
+        if (ratingText != null) {
+            float top = padding + nameHeight;
+            canvas.save();
+            canvas.translate(padding, top + (ratingHeight - starSize) / 2);
+            canvas.drawPath(star, starPaint);
+            canvas.restore();
+
+            float textHeight = ratingMetrics.descent - ratingMetrics.ascent;
+            float baseline = top + (ratingHeight - textHeight) / 2 - ratingMetrics.ascent;
+            canvas.drawText(ratingText, padding + starSize + starPadding, baseline, ratingPaint);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Draws a cluster circle with a white ring and its label
+     */
+    public synchronized Bitmap drawClusterIcon(String text) {
+        float size = Math.max(clusterMinSize, clusterPaint.measureText(text) + 2 * padding);
+        int pixels = (int) Math.ceil(size);
+        Bitmap bitmap = Bitmap.createBitmap(pixels, pixels, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        float center = pixels / 2f;
+        backgroundPaint.setColor(COLOR_TEXT);
+        canvas.drawCircle(center, center, center, backgroundPaint);
+        backgroundPaint.setColor(COLOR_OPEN);
+        canvas.drawCircle(center, center, center - clusterStroke, backgroundPaint);
+
+        Paint.FontMetrics metrics = clusterPaint.getFontMetrics();
+        canvas.drawText(text, center, center - (metrics.ascent + metrics.descent) / 2, clusterPaint);
+        return bitmap;
+    }
+
+    private static String keyOf(Restaurant restaurant) {
+        // Icons show the rating to one decimal
+        int rating = Math.round(restaurant.getRating() * 10);
+        return stateOf(restaurant) + ":" + rating + ":" + restaurant.getName();
+    }
+}
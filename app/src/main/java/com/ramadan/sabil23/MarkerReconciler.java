@@ -0,0 +1,255 @@
+package com.ramadan.sabil23;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the restaurants shown on a map in step with search results, keyed by place ID.
+ *
+ * A refresh starts a pass with beginPass(). Restaurants the search returns are confirmed:
+ * new ones are added, known ones are updated in place and only get a new icon when what
+ * the icon shows changed. endPass() then removes the restaurants nobody confirmed. What
+ * stays put is never removed and re-added, so a refresh does not flicker and only draws
+ * the icons it has to.
+ *
+ * Changes go to a Target, either plain markers on a GoogleMap or a ClusterManager.
+ * Must be used on the main thread.
+ */
+public class MarkerReconciler {
+
+    /**
+     * Receives the changes of a reconciliation
+     */
+    public interface Target {
+        void add(Restaurant restaurant);
+        void update(Restaurant shown, Restaurant restaurant, boolean iconChanged);
+        void remove(Restaurant restaurant);
+
+        /**
+         * Called after each batch of changes
+         */
+        void commit();
+    }
+
+    /**
+     * Creates the markers and icons for restaurants
+     */
+    public interface MarkerFactory {
+        MarkerOptions createMarker(Restaurant restaurant);
+        BitmapDescriptor createIcon(Restaurant restaurant);
+    }
+
+    private final Target target;
+    private final Map<String, Restaurant> shown = new HashMap<>();
+
+    // Place IDs confirmed since the last beginPass()
+    private final Set<String> confirmed = new HashSet<>();
+
+    /**
+     * Reconciles plain markers on a map, tagged with their restaurant
+     */
+    public MarkerReconciler(GoogleMap map, MarkerFactory factory) {
+        this(new MapTarget(map, factory));
+    }
+
+    public MarkerReconciler(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Starts a refresh, every restaurant shown becomes unconfirmed
+     */
+    public void beginPass() {
+        confirmed.clear();
+    }
+
+    /**
+     * Shows restaurants that are not shown yet, without confirming them
+     */
+    public void show(List<Restaurant> restaurants) {
+        for (Restaurant restaurant : restaurants) {
+            if (!shown.containsKey(restaurant.getId())) {
+                shown.put(restaurant.getId(), restaurant);
+                target.add(restaurant);
+            }
+        }
+        target.commit();
+    }
+
+    /**
+     * Shows restaurants returned by the running refresh and marks them confirmed
+     */
+    public void confirm(List<Restaurant> restaurants) {
+        confirm(restaurants, true);
+    }
+
+    /**
+     * Confirms restaurants, committing the target only if commit is set. A batch applied
+     * in parts calls commit() once after its last part.
+     */
+    public void confirm(List<Restaurant> restaurants, boolean commit) {
+        for (Restaurant restaurant : restaurants) {
+            Restaurant previous = shown.put(restaurant.getId(), restaurant);
+            if (previous == null) {
+                target.add(restaurant);
+            } else {
+                target.update(previous, restaurant, iconChanged(previous, restaurant));
+            }
+            confirmed.add(restaurant.getId());
+        }
+        if (commit) {
+            target.commit();
+        }
+    }
+
+    /**
+     * Commits the changes made without a commit to the target
+     */
+    public void commit() {
+        target.commit();
+    }
+
+    /**
+     * Removes the given restaurants unless this pass confirmed them, for results that
+     * were returned but then filtered out
+     */
+    public void removeUnconfirmed(List<Restaurant> restaurants) {
+        for (Restaurant restaurant : restaurants) {
+            if (!confirmed.contains(restaurant.getId())) {
+                Restaurant previous = shown.remove(restaurant.getId());
+                if (previous != null) {
+                    target.remove(previous);
+                }
+            }
+        }
+        target.commit();
+    }
+
+    /**
+     * Finishes a refresh, removing every unconfirmed restaurant except those still being
+     * processed
+     */
+    public void endPass(Collection<Restaurant> pending) {
+        Set<String> keep = new HashSet<>(confirmed);
+        for (Restaurant restaurant : pending) {
+            keep.add(restaurant.getId());
+        }
+
+        Iterator<Map.Entry<String, Restaurant>> iterator = shown.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Restaurant> entry = iterator.next();
+            if (!keep.contains(entry.getKey())) {
+                target.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+        target.commit();
+    }
+
+    /**
+     * Removes every restaurant
+     */
+    public void clear() {
+        for (Restaurant restaurant : shown.values()) {
+            target.remove(restaurant);
+        }
+        shown.clear();
+        confirmed.clear();
+        target.commit();
+    }
+
+    /**
+     * Returns the restaurant shown for a place ID, or null
+     */
+    public Restaurant get(String placeId) {
+        return shown.get(placeId);
+    }
+
+    public boolean contains(String placeId) {
+        return shown.containsKey(placeId);
+    }
+
+    public boolean isConfirmed(String placeId) {
+        return confirmed.contains(placeId);
+    }
+
+    public int size() {
+        return shown.size();
+    }
+
+    /**
+     * Number of restaurants shown but not confirmed by the running refresh
+     */
+    public int unconfirmedCount() {
+        return shown.size() - confirmed.size();
+    }
+
+    /**
+     * Checks if a marker icon drawn for one restaurant state is out of date for another
+     */
+    private static boolean iconChanged(Restaurant shown, Restaurant restaurant) {
+        return shown.getRating() != restaurant.getRating()
+                || shown.isOpenNow() != restaurant.isOpenNow()
+                || !shown.getName().equals(restaurant.getName());
+    }
+
+    /**
+     * Plain markers added straight to a map
+     */
+    private static class MapTarget implements Target {
+        private final GoogleMap map;
+        private final MarkerFactory factory;
+        private final Map<String, Marker> markers = new HashMap<>();
+
+        MapTarget(GoogleMap map, MarkerFactory factory) {
+            this.map = map;
+            this.factory = factory;
+        }
+
+        @Override
+        public void add(Restaurant restaurant) {
+            Marker marker = map.addMarker(factory.createMarker(restaurant));
+            if (marker != null) {
+                marker.setTag(restaurant);
+                markers.put(restaurant.getId(), marker);
+            }
+        }
+
+        @Override
+        public void update(Restaurant shown, Restaurant restaurant, boolean iconChanged) {
+            Marker marker = markers.get(restaurant.getId());
+            if (marker == null) {
+                add(restaurant);
+                return;
+            }
+            if (iconChanged) {
+                marker.setIcon(factory.createIcon(restaurant));
+            }
+            marker.setTag(restaurant);
+        }
+
+        @Override
+        public void remove(Restaurant restaurant) {
+            Marker marker = markers.remove(restaurant.getId());
+            if (marker != null) {
+                marker.remove();
+            }
+        }
+
+        @Override
+        public void commit() {
+            // Markers are updated as the changes come in
+        }
+    }
+}
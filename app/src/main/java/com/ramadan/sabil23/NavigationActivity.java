@@ -25,6 +25,8 @@ import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.ramadan.sabil23.location.PolylineDecoder;
+import com.ramadan.sabil23.location.SimplifiedRoute;
 
 import java.util.List;
 
@@ -49,6 +51,13 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
 
     // Navigation data
     private Polyline routePolyline;
+
+    // Decoded route points, reused for every route drawn
+    private final PolylineDecoder.Buffer routeBuffer = new PolylineDecoder.Buffer();
+
+    // Levels of detail of the route drawn and the level on the map
+    private SimplifiedRoute simplifiedRoute;
+    private int routeLevel;
     private Marker originMarker;
     private Marker destinationMarker;
     private List<NavigationManager.Route> routes;
@@ -114,6 +123,19 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
         // Set up click listeners
         setupClickListeners();
     }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        FrameMetricsMonitor.getInstance(this).attach(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameMetricsMonitor.getInstance(this).detach(this);
+    }
+
     // Add this method to your NavigationActivity class
     private void launchGoogleMapsNavigation() {
         // Get the destination name
@@ -177,6 +199,9 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
         mMap.getUiSettings().setCompassEnabled(true);
         mMap.getUiSettings().setMyLocationButtonEnabled(false);
 
+        // Redraw the route at the level of detail of the new zoom
+        mMap.setOnCameraIdleListener(this::updateRouteLevel);
+
         // Add markers for destination
         addDestinationMarker();
 
@@ -258,6 +283,7 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
             routePolyline.remove();
             routePolyline = null;
         }
+        simplifiedRoute = null;
 
         // Remove origin marker
         if (originMarker != null) {
@@ -280,15 +306,36 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
             routePolyline.remove();
         }
 
-        // Decode polyline and draw route
-        List<LatLng> points = NavigationManager.decodePolyline(route.getPolyline());
+        FrameMetricsMonitor frameMonitor = FrameMetricsMonitor.getInstance(this);
+        frameMonitor.beginOperation(FrameMetricsMonitor.OP_ROUTE_DRAW);
+
+        // Decode polyline and draw the level for the zoom, addAll copies only its points
+        PolylineDecoder.decode(route.getPolyline(), routeBuffer);
+        simplifiedRoute = new SimplifiedRoute(routeBuffer);
+        routeLevel = SimplifiedRoute.levelForZoom(mMap.getCameraPosition().zoom);
         PolylineOptions polylineOptions = new PolylineOptions()
-                .addAll(points)
+                .addAll(simplifiedRoute.getPoints(routeLevel))
                 .width(12)
                 .color(getResources().getColor(android.R.color.holo_purple))
                 .geodesic(true);
 
         routePolyline = mMap.addPolyline(polylineOptions);
+        frameMonitor.endOperation(FrameMetricsMonitor.OP_ROUTE_DRAW);
+    }
+
+    /**
+     * Swaps the route points for the level of detail of the camera zoom, if it changed
+     */
+    private void updateRouteLevel() {
+        if (routePolyline == null || simplifiedRoute == null) return;
+
+        int level = SimplifiedRoute.levelForZoom(mMap.getCameraPosition().zoom);
+        if (level == routeLevel) return;
+
+        routeLevel = level;
+        routePolyline.setPoints(simplifiedRoute.getPoints(level));
+        Log.d(TAG, "Route drawn with " + simplifiedRoute.getPointCount(level) + " of "
+                + simplifiedRoute.size() + " points at zoom level " + level);
     }
 
     /**
@@ -6,6 +6,7 @@ import android.net.Uri;
 import android.util.Log;
 
 import com.google.android.gms.maps.model.LatLng;
+import com.ramadan.sabil23.location.PolylineDecoder;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -13,8 +14,11 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -30,6 +34,14 @@ public class NavigationManager {
 
     // API constants
     private static final String DIRECTIONS_API_BASE_URL = "https://maps.googleapis.com/maps/api/directions/json?";
+    private static final String DISTANCE_MATRIX_API_BASE_URL = "https://maps.googleapis.com/maps/api/distancematrix/json?";
+
+    // Distance matrix limits: destinations per request, and requests running at once
+    private static final int MATRIX_MAX_DESTINATIONS = 25;
+    private static final int MATRIX_MAX_CONCURRENT_REQUESTS = 2;
+
+    // Travel time of a destination that could not be reached or loaded
+    public static final int TRAVEL_TIME_UNKNOWN = -1;
 
     // Transportation modes
     public static final String MODE_DRIVING = "driving";
@@ -52,6 +64,9 @@ public class NavigationManager {
     // HTTP client
     private OkHttpClient httpClient;
 
+    // Recent directions results
+    private final RouteCache routeCache = new RouteCache();
+
     // Singleton instance
     private static NavigationManager instance;
 
@@ -151,17 +166,48 @@ public class NavigationManager {
     }
 
     /**
-     * Gets directions between two points
+     * Interface for travel time matrix callbacks
+     */
+    public interface TravelTimesCallback {
+        /**
+         * Travel times in seconds, in the order of the destinations, TRAVEL_TIME_UNKNOWN
+         * where there is no route or the request failed
+         */
+        void onTravelTimesLoaded(int[] seconds);
+        void onTravelTimesFailed(String errorMessage);
+    }
+
+    /**
+     * Gets the counters of the route cache
+     */
+    public RouteCache.Stats getRouteCacheStats() {
+        return routeCache.getStats();
+    }
+
+    /**
+     * Gets directions between two points. A trip requested recently is answered from
+     * the route cache, on a background thread like a network answer.
      */
     public void getDirections(LatLng origin, LatLng destination, String mode,
                               boolean alternatives, String departureTime,
                               String trafficModel, String transitPreference,
                               final RouteSearchCallback callback) {
+        if (mode == null) mode = MODE_DRIVING;
+
+        final String cacheKey = RouteCache.keyOf(origin, destination, mode, alternatives,
+                departureTime, trafficModel, transitPreference);
+        final boolean trafficAware = RouteCache.isTrafficAware(mode, departureTime);
+        List<Route> cached = routeCache.get(cacheKey);
+        if (cached != null) {
+            httpClient.dispatcher().executorService().execute(() -> callback.onRoutesFound(cached));
+            return;
+        }
+
         // Build the URL
         StringBuilder urlBuilder = new StringBuilder(DIRECTIONS_API_BASE_URL)
                 .append("origin=").append(origin.latitude).append(",").append(origin.longitude)
                 .append("&destination=").append(destination.latitude).append(",").append(destination.longitude)
-                .append("&mode=").append(mode != null ? mode : MODE_DRIVING)
+                .append("&mode=").append(mode)
                 .append("&key=").append(apiKey);
 
         // Add optional parameters
@@ -317,6 +363,10 @@ public class NavigationManager {
                         routes.add(route);
                     }
 
+                    if (!routes.isEmpty()) {
+                        routeCache.put(cacheKey, routes, trafficAware);
+                    }
+
                     // Return results - no need to wrap in runOnUiThread here
                     // The callback implementation should handle threading
                     callback.onRoutesFound(routes);
@@ -329,6 +379,180 @@ public class NavigationManager {
         });
     }
 
+    /**
+     * Gets travel times from one origin to many destinations with the distance matrix.
+     *
+     * Pairs travelled recently come from the route cache, the rest are sent in requests of
+     * up to MATRIX_MAX_DESTINATIONS destinations, at most MATRIX_MAX_CONCURRENT_REQUESTS at
+     * a time. Traffic-aware driving times depart now. The callback runs once, on a
+     * background thread, also when every pair was cached.
+     */
+    public void getTravelTimes(LatLng origin, List<LatLng> destinations, String mode,
+                               boolean trafficAware, final TravelTimesCallback callback) {
+        final String travelMode = mode != null ? mode : MODE_DRIVING;
+        final boolean traffic = trafficAware && MODE_DRIVING.equals(travelMode);
+        final int count = destinations.size();
+        final int[] seconds = new int[count];
+        final String[] pairKeys = new String[count];
+
+        // Answer what the cache knows, the rest is fetched
+        int[] missing = new int[count];
+        int missingCount = 0;
+        for (int i = 0; i < count; i++) {
+            pairKeys[i] = RouteCache.pairKeyOf(origin, destinations.get(i), travelMode, traffic);
+            seconds[i] = routeCache.getTravelTime(pairKeys[i]);
+            if (seconds[i] == TRAVEL_TIME_UNKNOWN) {
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0) {
+            httpClient.dispatcher().executorService().execute(() -> callback.onTravelTimesLoaded(seconds));
+            return;
+        }
+
+        // Split the missing destinations into batches
+        final int batchCount = (missingCount + MATRIX_MAX_DESTINATIONS - 1) / MATRIX_MAX_DESTINATIONS;
+        final int[][] batches = new int[batchCount][];
+        for (int b = 0; b < batchCount; b++) {
+            int from = b * MATRIX_MAX_DESTINATIONS;
+            batches[b] = Arrays.copyOfRange(missing, from, Math.min(missingCount, from + MATRIX_MAX_DESTINATIONS));
+        }
+
+        // A few requests run at once, each one finishing starts the next batch
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(batchCount);
+        final AtomicInteger failures = new AtomicInteger();
+        final String[] lastError = new String[1];
+        Runnable[] startNext = new Runnable[1];
+        startNext[0] = () -> {
+            int b = nextBatch.getAndIncrement();
+            if (b >= batchCount) return;
+
+            requestTravelTimes(origin, destinations, batches[b], travelMode, traffic, seconds, pairKeys,
+                    error -> {
+                        if (error != null) {
+                            failures.incrementAndGet();
+                            lastError[0] = error;
+                        }
+                        if (remaining.decrementAndGet() > 0) {
+                            startNext[0].run();
+                        } else if (failures.get() == batchCount) {
+                            callback.onTravelTimesFailed(lastError[0]);
+                        } else {
+                            callback.onTravelTimesLoaded(seconds);
+                        }
+                    });
+        };
+        for (int i = 0; i < Math.min(batchCount, MATRIX_MAX_CONCURRENT_REQUESTS); i++) {
+            startNext[0].run();
+        }
+    }
+
+    /**
+     * Orders destinations by whether they can be reached before Maghrib: reachable ones
+     * first, soonest arrival first, then the late ones and last the unknown ones.
+     * Returns the destination indices in that order.
+     */
+    public static int[] rankByArrival(int[] seconds, long departureMillis, Calendar maghrib) {
+        int n = seconds.length;
+        long maghribMillis = maghrib != null ? maghrib.getTimeInMillis() : Long.MAX_VALUE;
+        long[] sortKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int group;
+            if (seconds[i] < 0) {
+                group = 2;
+            } else {
+                group = departureMillis + seconds[i] * 1000L <= maghribMillis ? 0 : 1;
+            }
+            // Group in the high bits, travel time below it, index in the low bits
+            long time = seconds[i] < 0 ? 0 : seconds[i];
+            sortKeys[i] = ((long) group << 60) | (time << 20) | i;
+        }
+        Arrays.sort(sortKeys);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (sortKeys[i] & 0xFFFFF);
+        }
+        return order;
+    }
+
+    /**
+     * Completion of one distance matrix request, with an error message or null
+     */
+    private interface BatchCallback {
+        void onBatchDone(String error);
+    }
+
+    /**
+     * Loads the travel times of one batch of destinations into seconds
+     */
+    private void requestTravelTimes(LatLng origin, List<LatLng> destinations, final int[] batch,
+                                    String mode, final boolean traffic, final int[] seconds,
+                                    final String[] pairKeys, final BatchCallback done) {
+        StringBuilder urlBuilder = new StringBuilder(DISTANCE_MATRIX_API_BASE_URL)
+                .append("origins=").append(origin.latitude).append(",").append(origin.longitude)
+                .append("&destinations=");
+        for (int i = 0; i < batch.length; i++) {
+            LatLng destination = destinations.get(batch[i]);
+            if (i > 0) urlBuilder.append("%7C");
+            urlBuilder.append(destination.latitude).append(",").append(destination.longitude);
+        }
+        urlBuilder.append("&mode=").append(mode);
+        if (traffic) {
+            urlBuilder.append("&departure_time=now");
+        }
+        urlBuilder.append("&key=").append(apiKey);
+
+        Request request = new Request.Builder()
+                .url(urlBuilder.toString())
+                .build();
+
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.e(TAG, "Distance matrix request failed", e);
+                done.onBatchDone("Network error: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                if (!response.isSuccessful()) {
+                    done.onBatchDone("API error: " + response.code());
+                    return;
+                }
+
+                try {
+                    JSONObject jsonResponse = new JSONObject(response.body().string());
+                    String status = jsonResponse.getString("status");
+                    if (!status.equals("OK")) {
+                        done.onBatchDone("API error: " + status);
+                        return;
+                    }
+
+                    // One row for the origin, one element per destination of the batch
+                    JSONArray elements = jsonResponse.getJSONArray("rows")
+                            .getJSONObject(0).getJSONArray("elements");
+                    for (int i = 0; i < batch.length && i < elements.length(); i++) {
+                        JSONObject element = elements.getJSONObject(i);
+                        if (!"OK".equals(element.optString("status"))) continue;
+
+                        JSONObject duration = element.has("duration_in_traffic")
+                                ? element.getJSONObject("duration_in_traffic")
+                                : element.getJSONObject("duration");
+                        int value = duration.getInt("value");
+                        seconds[batch[i]] = value;
+                        routeCache.putTravelTime(pairKeys[batch[i]], value, traffic);
+                    }
+                    done.onBatchDone(null);
+                } catch (JSONException e) {
+                    Log.e(TAG, "Error parsing distance matrix data", e);
+                    done.onBatchDone("Error parsing data: " + e.getMessage());
+                }
+            }
+        });
+    }
+
     /**
      * Launches navigation in Google Maps app
      */
@@ -352,38 +576,11 @@ public class NavigationManager {
     }
 
     /**
-     * Decodes a polyline string into a list of LatLng points
+     * Decodes a polyline string into a list of LatLng points. Callers that decode often
+     * should decode into a reused PolylineDecoder.Buffer instead.
      */
     public static List<LatLng> decodePolyline(String encoded) {
-        List<LatLng> poly = new ArrayList<>();
-        int index = 0, len = encoded.length();
-        int lat = 0, lng = 0;
-
-        while (index < len) {
-            int b, shift = 0, result = 0;
-            do {
-                b = encoded.charAt(index++) - 63;
-                result |= (b & 0x1f) << shift;
-                shift += 5;
-            } while (b >= 0x20);
-            int dlat = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
-            lat += dlat;
-
-            shift = 0;
-            result = 0;
-            do {
-                b = encoded.charAt(index++) - 63;
-                result |= (b & 0x1f) << shift;
-                shift += 5;
-            } while (b >= 0x20);
-            int dlng = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
-            lng += dlng;
-
-            LatLng p = new LatLng((double) lat / 1E5, (double) lng / 1E5);
-            poly.add(p);
-        }
-
-        return poly;
+        return PolylineDecoder.decode(encoded);
     }
 }
 
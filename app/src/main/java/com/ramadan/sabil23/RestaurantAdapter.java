@@ -46,22 +46,22 @@ public class RestaurantAdapter extends RecyclerView.Adapter<RestaurantAdapter.Vi
 
         // Set restaurant data
         holder.nameTextView.setText(restaurant.getName());
-        holder.addressTextView.setText(restaurant.getVicinity());
+        holder.addressTextView.setText(restaurant.getAddress());
 
         // Calculate distance (simplified)
-        double lat1 = restaurant.getPosition().latitude;
-        double lon1 = restaurant.getPosition().longitude;
-        double lat2 = restaurants.get(0).getPosition().latitude; // Use first restaurant as reference
-        double lon2 = restaurants.get(0).getPosition().longitude;
+        double lat1 = restaurant.getLatitude();
+        double lon1 = restaurant.getLongitude();
+        double lat2 = restaurants.get(0).getLatitude(); // Use first restaurant as reference
+        double lon2 = restaurants.get(0).getLongitude();
         double distance = calculateDistance(lat1, lon1, lat2, lon2);
 
         holder.distanceTextView.setText(formatDistance(distance));
-        holder.ratingBar.setRating((float) restaurant.getRating());
+        holder.ratingBar.setRating(restaurant.getRating());
 
         // Set status text
-        holder.statusTextView.setText(restaurant.isOpen() ? "Open Now" : "Closed");
+        holder.statusTextView.setText(restaurant.isOpenNow() ? "Open Now" : "Closed");
         holder.statusTextView.setTextColor(context.getResources().getColor(
-                restaurant.isOpen() ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
+                restaurant.isOpenNow() ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
 
         // Set click listeners
         holder.navigateButton.setOnClickListener(new View.OnClickListener() {
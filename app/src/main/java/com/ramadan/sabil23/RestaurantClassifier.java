@@ -0,0 +1,359 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Scores restaurants for halal and Iftar likelihood.
+ *
+ * All keywords are compiled once into an Aho-Corasick automaton, so a restaurant's
+ * name and types are scanned a single time, character by character, without creating
+ * lowercase copies. Each keyword carries separate weights for names and types and the
+ * matched weights are combined into a confidence score between 0 and 1.
+ */
+public class RestaurantClassifier {
+    private static final String TAG = "RestaurantClassifier";
+
+    // Categories
+    public static final int CATEGORY_HALAL = 0;
+    public static final int CATEGORY_IFTAR = 1;
+    public static final int CATEGORY_COUNT = 2;
+
+    // Scores at or above this value count as "likely"
+    public static final float LIKELY_THRESHOLD = 0.5f;
+
+    // Fields a keyword can be matched in
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_TYPE = 1;
+    private static final int FIELD_COUNT = 2;
+
+    // Dictionary keys in the bundled resource
+    private static final String[] CATEGORY_KEYS = {"halal", "iftar"};
+
+    // Singleton instance
+    private static RestaurantClassifier instance;
+
+    // Sorted folded characters used by any keyword, the index is the character class
+    private final char[] alphabet;
+
+    // Dense transition table, transitions[state * alphabet.length + class]
+    private final int[] transitions;
+
+    // Patterns recognised in each state, outputPatterns[outputStart[s] .. outputStart[s + 1])
+    private final int[] outputStart;
+    private final int[] outputPatterns;
+
+    // weights[(pattern * CATEGORY_COUNT + category) * FIELD_COUNT + field]
+    private final float[] weights;
+    private final int patternCount;
+
+    /**
+     * Gets the singleton instance, loading the bundled keyword dictionary
+     */
+    public static synchronized RestaurantClassifier getInstance(Context context) {
+        if (instance == null) {
+            instance = fromResource(context, R.raw.restaurant_keywords);
+        }
+        return instance;
+    }
+
+    /**
+     * Loads a classifier from a raw JSON resource, falling back to the built-in keywords
+     */
+    public static RestaurantClassifier fromResource(Context context, int resId) {
+        try (InputStream input = context.getResources().openRawResource(resId)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            StringBuilder json = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                json.append(line).append('\n');
+            }
+            return fromJson(new JSONObject(json.toString()));
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error loading keyword dictionary, using defaults", e);
+            return createDefault();
+        }
+    }
+
+    /**
+     * Builds a classifier from a dictionary of the form
+     * {"halal": [{"keyword": "...", "name": 0.9, "type": 0.9}, ...], "iftar": [...]}
+     */
+    public static RestaurantClassifier fromJson(JSONObject dictionary) throws JSONException {
+        Builder builder = new Builder();
+        for (int category = 0; category < CATEGORY_COUNT; category++) {
+            JSONArray entries = dictionary.optJSONArray(CATEGORY_KEYS[category]);
+            if (entries == null) continue;
+
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                builder.addKeyword(category, entry.getString("keyword"),
+                        (float) entry.optDouble("name", 0),
+                        (float) entry.optDouble("type", 0));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a classifier with the built-in English keywords
+     */
+    public static RestaurantClassifier createDefault() {
+        Builder builder = new Builder();
+
+        // Halal indicators
+        builder.addKeyword(CATEGORY_HALAL, "halal", 0.95f, 0.95f);
+        builder.addKeyword(CATEGORY_HALAL, "muslim", 0.8f, 0.8f);
+        builder.addKeyword(CATEGORY_HALAL, "islam", 0.7f, 0.7f);
+        builder.addKeyword(CATEGORY_HALAL, "mecca", 0.6f, 0f);
+        builder.addKeyword(CATEGORY_HALAL, "medina", 0.6f, 0f);
+        builder.addKeyword(CATEGORY_HALAL, "arabia", 0.6f, 0f);
+        builder.addKeyword(CATEGORY_HALAL, "middle_eastern", 0.4f, 0.6f);
+        builder.addKeyword(CATEGORY_HALAL, "pakistani", 0.5f, 0.6f);
+        builder.addKeyword(CATEGORY_HALAL, "turkish", 0.5f, 0.6f);
+        builder.addKeyword(CATEGORY_HALAL, "arabic", 0.5f, 0.6f);
+
+        // Iftar indicators
+        builder.addKeyword(CATEGORY_IFTAR, "iftar", 0.95f, 0.95f);
+        builder.addKeyword(CATEGORY_IFTAR, "ramadan", 0.8f, 0.8f);
+        builder.addKeyword(CATEGORY_IFTAR, "buffet", 0.5f, 0.3f);
+        builder.addKeyword(CATEGORY_IFTAR, "middle_eastern", 0f, 0.5f);
+        builder.addKeyword(CATEGORY_IFTAR, "pakistani", 0f, 0.5f);
+        builder.addKeyword(CATEGORY_IFTAR, "turkish", 0f, 0.5f);
+        builder.addKeyword(CATEGORY_IFTAR, "arabic", 0f, 0.5f);
+        builder.addKeyword(CATEGORY_IFTAR, "indian", 0f, 0.5f);
+        builder.addKeyword(CATEGORY_IFTAR, "mediterranean", 0f, 0.5f);
+
+        return builder.build();
+    }
+
+    private RestaurantClassifier(char[] alphabet, int[] transitions, int[] outputStart,
+                                 int[] outputPatterns, float[] weights, int patternCount) {
+        this.alphabet = alphabet;
+        this.transitions = transitions;
+        this.outputStart = outputStart;
+        this.outputPatterns = outputPatterns;
+        this.weights = weights;
+        this.patternCount = patternCount;
+    }
+
+    /**
+     * Scores a restaurant's name and types in one pass.
+     * scores must have CATEGORY_COUNT entries and receives a confidence per category.
+     * Each keyword counts at most once per field.
+     */
+    public void classify(CharSequence name, List<String> types, float[] scores) {
+        // Probability that no matched keyword is right, combined per category
+        Arrays.fill(scores, 0, CATEGORY_COUNT, 1f);
+
+        long[] seen = new long[((patternCount + 63) >>> 6) * FIELD_COUNT];
+        if (name != null) {
+            scan(name, FIELD_NAME, seen, scores);
+        }
+        if (types != null) {
+            for (int i = 0, n = types.size(); i < n; i++) {
+                scan(types.get(i), FIELD_TYPE, seen, scores);
+            }
+        }
+
+        for (int category = 0; category < CATEGORY_COUNT; category++) {
+            scores[category] = 1f - scores[category];
+        }
+    }
+
+    /**
+     * Runs the automaton over one text and folds matched weights into the miss products
+     */
+    private void scan(CharSequence text, int field, long[] seen, float[] miss) {
+        int alphabetSize = alphabet.length;
+        int seenOffset = field * ((patternCount + 63) >>> 6);
+        int state = 0;
+
+        for (int i = 0, n = text.length(); i < n; i++) {
+            int charClass = Arrays.binarySearch(alphabet, fold(text.charAt(i)));
+            state = charClass < 0 ? 0 : transitions[state * alphabetSize + charClass];
+
+            for (int o = outputStart[state], end = outputStart[state + 1]; o < end; o++) {
+                int pattern = outputPatterns[o];
+                int word = seenOffset + (pattern >>> 6);
+                long bit = 1L << pattern;
+                if ((seen[word] & bit) != 0) continue;
+                seen[word] |= bit;
+
+                for (int category = 0; category < CATEGORY_COUNT; category++) {
+                    float weight = weights[(pattern * CATEGORY_COUNT + category) * FIELD_COUNT + field];
+                    if (weight > 0) {
+                        miss[category] *= 1f - weight;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds a character for matching: lowercase, with underscores treated as spaces
+     * so that "middle_eastern" matches both types and names
+     */
+    private static char fold(char c) {
+        return c == '_' ? ' ' : Character.toLowerCase(c);
+    }
+
+    /**
+     * Collects keywords and compiles them into an automaton
+     */
+    public static class Builder {
+        private final Map<String, Integer> patternIds = new HashMap<>();
+        private final List<String> patterns = new ArrayList<>();
+        private final List<float[]> patternWeights = new ArrayList<>();
+
+        /**
+         * Adds a keyword to a category. A keyword shared by several categories is
+         * matched once and contributes to each of them.
+         */
+        public Builder addKeyword(int category, String keyword, float nameWeight, float typeWeight) {
+            StringBuilder folded = new StringBuilder(keyword.length());
+            for (int i = 0; i < keyword.length(); i++) {
+                folded.append(fold(keyword.charAt(i)));
+            }
+            String pattern = folded.toString().trim();
+            if (pattern.isEmpty()) return this;
+
+            Integer id = patternIds.get(pattern);
+            if (id == null) {
+                id = patterns.size();
+                patternIds.put(pattern, id);
+                patterns.add(pattern);
+                patternWeights.add(new float[CATEGORY_COUNT * FIELD_COUNT]);
+            }
+
+            float[] w = patternWeights.get(id);
+            w[category * FIELD_COUNT + FIELD_NAME] = clamp(nameWeight);
+            w[category * FIELD_COUNT + FIELD_TYPE] = clamp(typeWeight);
+            return this;
+        }
+
+        public RestaurantClassifier build() {
+            // Character classes
+            TreeSet<Character> chars = new TreeSet<>();
+            for (String pattern : patterns) {
+                for (int i = 0; i < pattern.length(); i++) {
+                    chars.add(pattern.charAt(i));
+                }
+            }
+            char[] alphabet = new char[chars.size()];
+            int a = 0;
+            for (char c : chars) {
+                alphabet[a++] = c;
+            }
+            int alphabetSize = alphabet.length;
+
+            // Trie
+            List<int[]> gotoRows = new ArrayList<>();
+            List<List<Integer>> outputs = new ArrayList<>();
+            gotoRows.add(newRow(alphabetSize));
+            outputs.add(new ArrayList<>());
+
+            for (int p = 0; p < patterns.size(); p++) {
+                String pattern = patterns.get(p);
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int charClass = Arrays.binarySearch(alphabet, pattern.charAt(i));
+                    int next = gotoRows.get(state)[charClass];
+                    if (next < 0) {
+                        next = gotoRows.size();
+                        gotoRows.get(state)[charClass] = next;
+                        gotoRows.add(newRow(alphabetSize));
+                        outputs.add(new ArrayList<>());
+                    }
+                    state = next;
+                }
+                outputs.get(state).add(p);
+            }
+
+            // Failure links, turning the trie into a complete DFA
+            int stateCount = gotoRows.size();
+            int[] fail = new int[stateCount];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            int[] root = gotoRows.get(0);
+            for (int c = 0; c < alphabetSize; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    fail[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                int[] row = gotoRows.get(state);
+                for (int c = 0; c < alphabetSize; c++) {
+                    int next = row[c];
+                    int fallback = gotoRows.get(fail[state])[c];
+                    if (next < 0) {
+                        row[c] = fallback;
+                    } else {
+                        fail[next] = fallback;
+                        outputs.get(next).addAll(outputs.get(fallback));
+                        queue.add(next);
+                    }
+                }
+            }
+
+            // Flatten into primitive arrays
+            int[] transitions = new int[stateCount * alphabetSize];
+            int[] outputStart = new int[stateCount + 1];
+            int outputCount = 0;
+            for (int s = 0; s < stateCount; s++) {
+                System.arraycopy(gotoRows.get(s), 0, transitions, s * alphabetSize, alphabetSize);
+                outputStart[s] = outputCount;
+                outputCount += outputs.get(s).size();
+            }
+            outputStart[stateCount] = outputCount;
+
+            int[] outputPatterns = new int[outputCount];
+            for (int s = 0; s < stateCount; s++) {
+                List<Integer> out = outputs.get(s);
+                for (int i = 0; i < out.size(); i++) {
+                    outputPatterns[outputStart[s] + i] = out.get(i);
+                }
+            }
+
+            float[] weights = new float[patterns.size() * CATEGORY_COUNT * FIELD_COUNT];
+            for (int p = 0; p < patterns.size(); p++) {
+                System.arraycopy(patternWeights.get(p), 0, weights,
+                        p * CATEGORY_COUNT * FIELD_COUNT, CATEGORY_COUNT * FIELD_COUNT);
+            }
+
+            Log.d(TAG, "Compiled " + patterns.size() + " keywords into " + stateCount + " states");
+            return new RestaurantClassifier(alphabet, transitions, outputStart,
+                    outputPatterns, weights, patterns.size());
+        }
+
+        private static int[] newRow(int size) {
+            int[] row = new int[size];
+            Arrays.fill(row, -1);
+            return row;
+        }
+
+        private static float clamp(float weight) {
+            return Math.max(0f, Math.min(1f, weight));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+import android.util.DisplayMetrics;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.algo.NonHierarchicalViewBasedAlgorithm;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+import com.ramadan.sabil23.model.Restaurant;
+
+/**
+ * Renders clustered restaurants with the icons of MarkerIconRenderer.
+ *
+ * Restaurant markers are tagged with their restaurant, like unclustered ones, so info
+ * window adapters and click listeners can read it back. Restaurants the state callback
+ * reports as stale are drawn faded.
+ */
+public class RestaurantClusterRenderer extends DefaultClusterRenderer<Restaurant> {
+    private static final String TAG = "RestaurantClusterRenderer";
+    private static final float STALE_ALPHA = 0.5f;
+
+    /**
+     * Tells which restaurants are shown from old results
+     */
+    public interface StaleChecker {
+        boolean isStale(Restaurant restaurant);
+    }
+
+    private final MarkerIconRenderer iconRenderer;
+    private final StaleChecker staleChecker;
+
+    public RestaurantClusterRenderer(Context context, GoogleMap map, ClusterManager<Restaurant> clusterManager,
+                                     StaleChecker staleChecker) {
+        super(context, map, clusterManager);
+        this.iconRenderer = MarkerIconRenderer.getInstance(context);
+        this.staleChecker = staleChecker;
+    }
+
+    /**
+     * Creates a cluster manager for a map that clusters on a background thread, only over
+     * the restaurants in and around the visible area
+     */
+    public static ClusterManager<Restaurant> createClusterManager(Context context, GoogleMap map,
+                                                                  StaleChecker staleChecker) {
+        ClusterManager<Restaurant> clusterManager = new ClusterManager<>(context, map);
+
+        // The algorithm takes the map size in dp
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        clusterManager.setAlgorithm(new NonHierarchicalViewBasedAlgorithm<>(
+                (int) (metrics.widthPixels / metrics.density),
+                (int) (metrics.heightPixels / metrics.density)));
+        clusterManager.setRenderer(new RestaurantClusterRenderer(context, map, clusterManager, staleChecker));
+        return clusterManager;
+    }
+
+    @Override
+    protected void onBeforeClusterItemRendered(@NonNull Restaurant item, @NonNull MarkerOptions markerOptions) {
+        markerOptions.icon(iconRenderer.getIcon(item))
+                .anchor(0.5f, 1.0f)
+                .title(item.getName())
+                .alpha(alphaOf(item));
+    }
+
+    @Override
+    protected void onClusterItemRendered(@NonNull Restaurant item, @NonNull Marker marker) {
+        marker.setTag(item);
+    }
+
+    @Override
+    protected void onClusterItemUpdated(@NonNull Restaurant item, @NonNull Marker marker) {
+        super.onClusterItemUpdated(item, marker);
+        // Icons are cached, setting an unchanged one is cheap
+        marker.setIcon(iconRenderer.getIcon(item));
+        marker.setAlpha(alphaOf(item));
+        marker.setTag(item);
+    }
+
+    @NonNull
+    @Override
+    protected BitmapDescriptor getDescriptorForCluster(@NonNull Cluster<Restaurant> cluster) {
+        return iconRenderer.getClusterIcon(getClusterText(getBucket(cluster)));
+    }
+
+    private float alphaOf(Restaurant restaurant) {
+        return staleChecker != null && staleChecker.isStale(restaurant) ? STALE_ALPHA : 1f;
+    }
+}
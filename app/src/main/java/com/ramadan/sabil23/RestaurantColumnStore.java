@@ -0,0 +1,169 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column store for large restaurant sets, such as every Iftar spot in a city.
+ *
+ * Each field lives in its own primitive array and rows are addressed by index, so passes
+ * over every row, such as building the heatmap, are tight loops over doubles, floats and
+ * longs instead of walks over thousands of objects. Ids, names and addresses go through a
+ * string table. Only the fields such passes read are kept, so rows are not turned back
+ * into Restaurant objects; the spatial index holds the full restaurants.
+ *
+ * The bits column holds the PlaceType mask in its low bits and the FLAG_* values in its
+ * high bits, so a single mask test filters on types and flags together.
+ *
+ * All methods are synchronized, results from searches can be added from any thread.
+ */
+public class RestaurantColumnStore {
+    // Flags stored above the PlaceType bits
+    public static final long FLAG_OPEN_NOW = 1L << 56;
+    public static final long FLAG_HALAL = 1L << 57;
+    public static final long FLAG_IFTAR_SPECIAL = 1L << 58;
+    public static final long FLAG_HAS_DETAILS = 1L << 59;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Columns
+    private int size;
+    private int[] idRefs = new int[INITIAL_CAPACITY];
+    private int[] nameRefs = new int[INITIAL_CAPACITY];
+    private int[] addressRefs = new int[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private float[] distances = new float[INITIAL_CAPACITY];
+    private float[] ratings = new float[INITIAL_CAPACITY];
+    private float[] halalScores = new float[INITIAL_CAPACITY];
+    private float[] iftarScores = new float[INITIAL_CAPACITY];
+    private byte[] priceLevels = new byte[INITIAL_CAPACITY];
+    private long[] bits = new long[INITIAL_CAPACITY];
+    private WeeklyOpeningHours[] weeklyHours = new WeeklyOpeningHours[INITIAL_CAPACITY];
+
+    private final StringTable strings = new StringTable();
+    private final Map<String, Integer> rowsById = new HashMap<>();
+
+    /**
+     * Adds a restaurant, or overwrites its row if it is already stored. Returns the row.
+     */
+    public synchronized int put(Restaurant restaurant) {
+        Integer existing = rowsById.get(restaurant.getId());
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowsById.put(restaurant.getId(), row);
+            idRefs[row] = strings.add(restaurant.getId());
+        }
+
+        nameRefs[row] = strings.add(restaurant.getName());
+        addressRefs[row] = strings.add(restaurant.getAddress());
+        latitudes[row] = restaurant.getLatitude();
+        longitudes[row] = restaurant.getLongitude();
+        distances[row] = (float) restaurant.getDistance();
+        ratings[row] = restaurant.getRating();
+        halalScores[row] = restaurant.getHalalScore();
+        iftarScores[row] = restaurant.getIftarScore();
+        priceLevels[row] = (byte) restaurant.getPriceLevel();
+        weeklyHours[row] = restaurant.getWeeklyHours();
+
+        long rowBits = restaurant.getTypes();
+        if (restaurant.isOpenNow()) rowBits |= FLAG_OPEN_NOW;
+        if (restaurant.isHalal()) rowBits |= FLAG_HALAL;
+        if (restaurant.hasIftarSpecial()) rowBits |= FLAG_IFTAR_SPECIAL;
+        if (restaurant.hasDetails()) rowBits |= FLAG_HAS_DETAILS;
+        bits[row] = rowBits;
+        return row;
+    }
+
+    public synchronized void putAll(List<Restaurant> restaurants) {
+        ensureCapacity(size + restaurants.size());
+        for (int i = 0, n = restaurants.size(); i < n; i++) {
+            put(restaurants.get(i));
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row of a place ID, or -1
+     */
+    public synchronized int indexOf(String placeId) {
+        Integer row = rowsById.get(placeId);
+        return row != null ? row : -1;
+    }
+
+    public synchronized void clear() {
+        size = 0;
+        rowsById.clear();
+        strings.clear();
+        Arrays.fill(weeklyHours, null);
+    }
+
+    // Column accessors
+    public synchronized double getLatitude(int row) { return latitudes[row]; }
+    public synchronized double getLongitude(int row) { return longitudes[row]; }
+    public synchronized float getDistance(int row) { return distances[row]; }
+    public synchronized float getRating(int row) { return ratings[row]; }
+    public synchronized float getHalalScore(int row) { return halalScores[row]; }
+    public synchronized float getIftarScore(int row) { return iftarScores[row]; }
+    public synchronized int getPriceLevel(int row) { return priceLevels[row]; }
+    public synchronized long getBits(int row) { return bits[row]; }
+    public synchronized String getName(int row) { return strings.get(nameRefs[row]); }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= latitudes.length) return;
+
+        int newCapacity = Math.max(capacity, latitudes.length * 2);
+        idRefs = Arrays.copyOf(idRefs, newCapacity);
+        nameRefs = Arrays.copyOf(nameRefs, newCapacity);
+        addressRefs = Arrays.copyOf(addressRefs, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        distances = Arrays.copyOf(distances, newCapacity);
+        ratings = Arrays.copyOf(ratings, newCapacity);
+        halalScores = Arrays.copyOf(halalScores, newCapacity);
+        iftarScores = Arrays.copyOf(iftarScores, newCapacity);
+        priceLevels = Arrays.copyOf(priceLevels, newCapacity);
+        bits = Arrays.copyOf(bits, newCapacity);
+        weeklyHours = Arrays.copyOf(weeklyHours, newCapacity);
+    }
+
+    /**
+     * Stores each distinct string once and hands out int references. Reference -1 is null.
+     */
+    private static class StringTable {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int add(String value) {
+            if (value == null) return -1;
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = values.size();
+                values.add(value);
+                refs.put(value, ref);
+            }
+            return ref;
+        }
+
+        String get(int ref) {
+            return ref >= 0 ? values.get(ref) : null;
+        }
+
+        void clear() {
+            refs.clear();
+            values.clear();
+        }
+    }
+}
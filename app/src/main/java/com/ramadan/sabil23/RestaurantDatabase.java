@@ -0,0 +1,724 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.ramadan.sabil23.location.GeoHash;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk store for every restaurant loaded from the Places API.
+ *
+ * Restaurants live in a plain table, with an R*Tree table for location queries and an FTS4
+ * table for name and address search, both keyed by the restaurant's rowid. Devices whose
+ * SQLite lacks either module fall back to a (latitude, longitude) index and LIKE queries.
+ *
+ * Writes are queued and flushed in one transaction on a background thread, so bursts
+ * of nearby and details responses cost a single commit and never block the UI thread.
+ */
+public class RestaurantDatabase extends SQLiteOpenHelper {
+    private static final String TAG = "RestaurantDatabase";
+    private static final String DATABASE_NAME = "restaurants.db";
+    private static final int DATABASE_VERSION = 2;
+
+    // Table names
+    private static final String TABLE_RESTAURANTS = "restaurants";
+    private static final String TABLE_GEO = "restaurant_geo";
+    private static final String TABLE_FTS = "restaurant_fts";
+    private static final String TABLE_COVERAGE = "coverage";
+    private static final String TABLE_RESULT_SETS = "result_sets";
+
+    // Column names
+    private static final String KEY_ROWID = "rowid";
+    private static final String KEY_PLACE_ID = "place_id";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_ADDRESS = "address";
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+    private static final String KEY_RATING = "rating";
+    private static final String KEY_PRICE_LEVEL = "price_level";
+    private static final String KEY_TYPES = "types";
+    private static final String KEY_OPEN_NOW = "open_now";
+    private static final String KEY_HALAL_SCORE = "halal_score";
+    private static final String KEY_IFTAR_SCORE = "iftar_score";
+    private static final String KEY_PHOTO_REFERENCE = "photo_reference";
+    private static final String KEY_HAS_DETAILS = "has_details";
+    private static final String KEY_PHONE = "phone";
+    private static final String KEY_WEBSITE = "website";
+    private static final String KEY_OPENING_HOURS = "opening_hours";
+    private static final String KEY_WEEKLY_HOURS = "weekly_hours";
+    private static final String KEY_UPDATED_AT = "updated_at";
+    private static final String KEY_RADIUS = "radius";
+    private static final String KEY_BUCKET = "bucket";
+    private static final String KEY_PLACE_IDS = "place_ids";
+
+    // Write batching and maintenance
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000; // 30 days
+
+    // Last result sets, one per location bucket of about 1.2km x 0.6km
+    private static final int RESULT_SET_BUCKET_LENGTH = 6;
+    private static final int MAX_RESULT_SETS = 32;
+    private static final int MAX_RESULT_SET_SIZE = 200;
+
+    // Place IDs bound in one IN query, SQLite allows 999 arguments
+    private static final int MAX_QUERY_ARGS = 500;
+
+    // Singleton instance
+    private static RestaurantDatabase instance;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    // Restaurants waiting to be written, latest copy per place ID, guarded by this
+    private final Map<String, Restaurant> pendingWrites = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    private volatile boolean hasRtree;
+    private volatile boolean hasFts;
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized RestaurantDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new RestaurantDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RestaurantDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Readers keep going while a batch is being written
+        setWriteAheadLoggingEnabled(true);
+
+        // Drop old rows once per process, away from the UI thread
+        executor.execute(this::prune);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_RESTAURANTS + "("
+                + KEY_ROWID + " INTEGER PRIMARY KEY,"
+                + KEY_PLACE_ID + " TEXT NOT NULL UNIQUE,"
+                + KEY_NAME + " TEXT,"
+                + KEY_ADDRESS + " TEXT,"
+                + KEY_LATITUDE + " REAL,"
+                + KEY_LONGITUDE + " REAL,"
+                + KEY_RATING + " REAL,"
+                + KEY_PRICE_LEVEL + " INTEGER,"
+                + KEY_TYPES + " INTEGER,"
+                + KEY_OPEN_NOW + " INTEGER,"
+                + KEY_HALAL_SCORE + " REAL,"
+                + KEY_IFTAR_SCORE + " REAL,"
+                + KEY_PHOTO_REFERENCE + " TEXT,"
+                + KEY_HAS_DETAILS + " INTEGER,"
+                + KEY_PHONE + " TEXT,"
+                + KEY_WEBSITE + " TEXT,"
+                + KEY_OPENING_HOURS + " TEXT,"
+                + KEY_WEEKLY_HOURS + " BLOB,"
+                + KEY_UPDATED_AT + " INTEGER"
+                + ")");
+        db.execSQL("CREATE INDEX idx_restaurants_updated ON " + TABLE_RESTAURANTS + "(" + KEY_UPDATED_AT + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_COVERAGE + "("
+                + KEY_LATITUDE + " REAL,"
+                + KEY_LONGITUDE + " REAL,"
+                + KEY_RADIUS + " REAL,"
+                + KEY_UPDATED_AT + " INTEGER"
+                + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_RESULT_SETS + "("
+                + KEY_BUCKET + " TEXT PRIMARY KEY,"
+                + KEY_LATITUDE + " REAL,"
+                + KEY_LONGITUDE + " REAL,"
+                + KEY_PLACE_IDS + " TEXT,"
+                + KEY_UPDATED_AT + " INTEGER"
+                + ")");
+
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_GEO
+                    + " USING rtree(id, min_lat, max_lat, min_lng, max_lng)");
+        } catch (SQLException e) {
+            Log.w(TAG, "R*Tree not available, using a B-tree index for location queries", e);
+            db.execSQL("CREATE INDEX idx_restaurants_location ON " + TABLE_RESTAURANTS
+                    + "(" + KEY_LATITUDE + ", " + KEY_LONGITUDE + ")");
+        }
+
+        try {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_FTS + " USING fts4(name, address)");
+        } catch (SQLException e) {
+            Log.w(TAG, "FTS4 not available, using LIKE for text search", e);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        hasRtree = tableExists(db, TABLE_GEO);
+        hasFts = tableExists(db, TABLE_FTS);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store is a cache, it can always be rebuilt from the network
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESTAURANTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_COVERAGE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESULT_SETS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_GEO);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FTS);
+        onCreate(db);
+    }
+
+    /**
+     * Queues restaurants to be written. Details already stored are kept when a
+     * restaurant without details is saved again.
+     */
+    public void saveRestaurants(List<Restaurant> restaurants) {
+        synchronized (this) {
+            for (Restaurant restaurant : restaurants) {
+                Restaurant pending = pendingWrites.get(restaurant.getId());
+                // A queued copy with details wins over a plain nearby result
+                if (pending == null || restaurant.hasDetails() || !pending.hasDetails()) {
+                    pendingWrites.put(restaurant.getId(), restaurant);
+                }
+            }
+
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that an area was searched on the network
+     */
+    public void saveCoverage(double latitude, double longitude, double radiusMeters, long time) {
+        executor.execute(() -> {
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                db.execSQL("INSERT INTO " + TABLE_COVERAGE + " VALUES (?, ?, ?, ?)",
+                        new Object[]{latitude, longitude, radiusMeters, time});
+            } catch (SQLException e) {
+                Log.e(TAG, "Error saving coverage", e);
+            }
+        });
+    }
+
+    /**
+     * Remembers the restaurants last shown around a point, replacing the set stored for
+     * its location bucket
+     */
+    public void saveResultSet(double latitude, double longitude, List<String> placeIds) {
+        String bucket = GeoHash.encodeString(latitude, longitude, RESULT_SET_BUCKET_LENGTH);
+        List<String> ids = placeIds.size() > MAX_RESULT_SET_SIZE
+                ? placeIds.subList(0, MAX_RESULT_SET_SIZE) : placeIds;
+        String joined = String.join(",", ids);
+        long now = System.currentTimeMillis();
+
+        executor.execute(() -> {
+            try {
+                SQLiteDatabase db = getWritableDatabase();
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_RESULT_SETS + " VALUES (?, ?, ?, ?, ?)",
+                        new Object[]{bucket, latitude, longitude, joined, now});
+                db.execSQL("DELETE FROM " + TABLE_RESULT_SETS + " WHERE " + KEY_BUCKET + " NOT IN (SELECT "
+                        + KEY_BUCKET + " FROM " + TABLE_RESULT_SETS + " ORDER BY " + KEY_UPDATED_AT
+                        + " DESC LIMIT " + MAX_RESULT_SETS + ")");
+            } catch (SQLException e) {
+                Log.e(TAG, "Error saving result set", e);
+            }
+        });
+    }
+
+    /**
+     * Loads the result set stored nearest to a point, within maxDistanceMeters of where it
+     * was searched. Restaurants come back in their stored order with the distance to the
+     * point set, and the list is empty when no set is close enough.
+     */
+    public List<Restaurant> loadNearestResultSet(double latitude, double longitude, double maxDistanceMeters) {
+        String placeIds = null;
+        double nearest = maxDistanceMeters;
+        String sql = "SELECT " + KEY_LATITUDE + ", " + KEY_LONGITUDE + ", " + KEY_PLACE_IDS
+                + " FROM " + TABLE_RESULT_SETS;
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                double distance = GeoHash.distanceMeters(latitude, longitude,
+                        cursor.getDouble(0), cursor.getDouble(1));
+                if (distance <= nearest) {
+                    nearest = distance;
+                    placeIds = cursor.getString(2);
+                }
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error loading result sets", e);
+        }
+
+        List<Restaurant> restaurants = new ArrayList<>();
+        if (placeIds == null || placeIds.isEmpty()) return restaurants;
+
+        String[] ids = placeIds.split(",");
+        Map<String, Restaurant> byId = loadRestaurants(Arrays.asList(ids));
+        for (String id : ids) {
+            Restaurant restaurant = byId.get(id);
+            if (restaurant != null) {
+                restaurants.add(restaurant.withDistance(GeoHash.distanceMeters(latitude, longitude,
+                        restaurant.getLatitude(), restaurant.getLongitude())));
+            }
+        }
+        return restaurants;
+    }
+
+    /**
+     * Loads stored restaurants by place ID. Place IDs not stored are left out.
+     */
+    public Map<String, Restaurant> loadRestaurants(List<String> placeIds) {
+        Map<String, Restaurant> byId = new LinkedHashMap<>();
+        for (int from = 0; from < placeIds.size(); from += MAX_QUERY_ARGS) {
+            String[] ids = placeIds.subList(from, Math.min(placeIds.size(), from + MAX_QUERY_ARGS))
+                    .toArray(new String[0]);
+            StringBuilder in = new StringBuilder();
+            for (int i = 0; i < ids.length; i++) {
+                in.append(i == 0 ? "?" : ", ?");
+            }
+
+            String sql = "SELECT * FROM " + TABLE_RESTAURANTS + " WHERE " + KEY_PLACE_ID + " IN (" + in + ")";
+            try (Cursor cursor = getReadableDatabase().rawQuery(sql, ids)) {
+                CursorReader reader = new CursorReader(cursor);
+                while (cursor.moveToNext()) {
+                    Restaurant restaurant = reader.read();
+                    byId.put(restaurant.getId(), restaurant);
+                }
+            } catch (SQLException e) {
+                Log.e(TAG, "Error loading restaurants", e);
+            }
+        }
+        return byId;
+    }
+
+    /**
+     * Writes all queued restaurants in one transaction
+     */
+    private void flush() {
+        List<Restaurant> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        SQLiteStatement findRow = null, insert = null, updateAll = null, updateBasic = null;
+        SQLiteStatement upsertGeo = null, deleteFts = null, insertFts = null;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            findRow = db.compileStatement(
+                    "SELECT " + KEY_ROWID + " FROM " + TABLE_RESTAURANTS + " WHERE " + KEY_PLACE_ID + " = ?");
+            insert = db.compileStatement("INSERT INTO " + TABLE_RESTAURANTS + "("
+                    + KEY_PLACE_ID + ", " + KEY_NAME + ", " + KEY_ADDRESS + ", " + KEY_LATITUDE + ", "
+                    + KEY_LONGITUDE + ", " + KEY_RATING + ", " + KEY_PRICE_LEVEL + ", " + KEY_TYPES + ", "
+                    + KEY_OPEN_NOW + ", " + KEY_HALAL_SCORE + ", " + KEY_IFTAR_SCORE + ", "
+                    + KEY_PHOTO_REFERENCE + ", " + KEY_HAS_DETAILS + ", " + KEY_PHONE + ", " + KEY_WEBSITE + ", "
+                    + KEY_OPENING_HOURS + ", " + KEY_WEEKLY_HOURS + ", " + KEY_UPDATED_AT
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            updateAll = db.compileStatement("UPDATE " + TABLE_RESTAURANTS + " SET "
+                    + KEY_NAME + " = ?, " + KEY_ADDRESS + " = ?, " + KEY_LATITUDE + " = ?, "
+                    + KEY_LONGITUDE + " = ?, " + KEY_RATING + " = ?, " + KEY_PRICE_LEVEL + " = ?, "
+                    + KEY_TYPES + " = ?, " + KEY_OPEN_NOW + " = ?, " + KEY_HALAL_SCORE + " = ?, "
+                    + KEY_IFTAR_SCORE + " = ?, " + KEY_PHOTO_REFERENCE + " = ?, " + KEY_HAS_DETAILS + " = ?, "
+                    + KEY_PHONE + " = ?, " + KEY_WEBSITE + " = ?, " + KEY_OPENING_HOURS + " = ?, "
+                    + KEY_WEEKLY_HOURS + " = ?, " + KEY_UPDATED_AT + " = ? WHERE " + KEY_ROWID + " = ?");
+            // Nearby results refresh the search fields and leave stored details alone
+            updateBasic = db.compileStatement("UPDATE " + TABLE_RESTAURANTS + " SET "
+                    + KEY_NAME + " = ?, "
+                    + KEY_ADDRESS + " = CASE WHEN " + KEY_HAS_DETAILS + " THEN " + KEY_ADDRESS + " ELSE ? END, "
+                    + KEY_LATITUDE + " = ?, " + KEY_LONGITUDE + " = ?, " + KEY_RATING + " = ?, "
+                    + KEY_PRICE_LEVEL + " = ?, " + KEY_TYPES + " = ?, " + KEY_OPEN_NOW + " = ?, "
+                    + KEY_HALAL_SCORE + " = ?, " + KEY_IFTAR_SCORE + " = ?, " + KEY_PHOTO_REFERENCE + " = ?, "
+                    + KEY_UPDATED_AT + " = ? WHERE " + KEY_ROWID + " = ?");
+            upsertGeo = hasRtree ? db.compileStatement(
+                    "INSERT OR REPLACE INTO " + TABLE_GEO + " VALUES (?, ?, ?, ?, ?)") : null;
+            deleteFts = hasFts ? db.compileStatement(
+                    "DELETE FROM " + TABLE_FTS + " WHERE docid = ?") : null;
+            insertFts = hasFts ? db.compileStatement(
+                    "INSERT INTO " + TABLE_FTS + "(docid, name, address) VALUES (?, ?, ?)") : null;
+
+            db.beginTransaction();
+            try {
+                for (Restaurant restaurant : batch) {
+                    long rowId = findRowId(findRow, restaurant.getId());
+
+                    if (rowId < 0) {
+                        bindAll(insert, restaurant, now, 1);
+                        rowId = insert.executeInsert();
+                    } else if (restaurant.hasDetails()) {
+                        // Columns shift by one, the place ID is not updated
+                        bindAll(updateAll, restaurant, now, 0);
+                        updateAll.bindLong(18, rowId);
+                        updateAll.executeUpdateDelete();
+                    } else {
+                        bindBasic(updateBasic, restaurant, now);
+                        updateBasic.bindLong(13, rowId);
+                        updateBasic.executeUpdateDelete();
+                    }
+
+                    if (upsertGeo != null) {
+                        upsertGeo.bindLong(1, rowId);
+                        upsertGeo.bindDouble(2, restaurant.getLatitude());
+                        upsertGeo.bindDouble(3, restaurant.getLatitude());
+                        upsertGeo.bindDouble(4, restaurant.getLongitude());
+                        upsertGeo.bindDouble(5, restaurant.getLongitude());
+                        upsertGeo.executeInsert();
+                    }
+
+                    if (insertFts != null) {
+                        deleteFts.bindLong(1, rowId);
+                        deleteFts.executeUpdateDelete();
+                        insertFts.bindLong(1, rowId);
+                        bindString(insertFts, 2, restaurant.getName());
+                        bindString(insertFts, 3, restaurant.getAddress());
+                        insertFts.executeInsert();
+                    }
+                }
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Saved " + batch.size() + " restaurants");
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException e) {
+            // Opening the database fails too when the disk is full or the file is locked
+            Log.e(TAG, "Error saving restaurants", e);
+        } finally {
+            closeQuietly(findRow, insert, updateAll, updateBasic, upsertGeo, deleteFts, insertFts);
+        }
+    }
+
+    private static void closeQuietly(SQLiteStatement... statements) {
+        for (SQLiteStatement statement : statements) {
+            if (statement != null) statement.close();
+        }
+    }
+
+    private static long findRowId(SQLiteStatement findRow, String placeId) {
+        findRow.bindString(1, placeId);
+        try {
+            return findRow.simpleQueryForLong();
+        } catch (android.database.sqlite.SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Binds every column starting at index first + 1, first is 1 when the place ID is bound too
+     */
+    private static void bindAll(SQLiteStatement statement, Restaurant restaurant, long now, int first) {
+        int i = 1;
+        if (first == 1) {
+            statement.bindString(i++, restaurant.getId());
+        }
+        bindString(statement, i++, restaurant.getName());
+        bindString(statement, i++, restaurant.getAddress());
+        statement.bindDouble(i++, restaurant.getLatitude());
+        statement.bindDouble(i++, restaurant.getLongitude());
+        statement.bindDouble(i++, restaurant.getRating());
+        statement.bindLong(i++, restaurant.getPriceLevel());
+        statement.bindLong(i++, restaurant.getTypes());
+        statement.bindLong(i++, restaurant.isOpenNow() ? 1 : 0);
+        statement.bindDouble(i++, restaurant.getHalalScore());
+        statement.bindDouble(i++, restaurant.getIftarScore());
+        bindString(statement, i++, restaurant.getPhotoReference());
+        statement.bindLong(i++, restaurant.hasDetails() ? 1 : 0);
+        bindString(statement, i++, restaurant.getPhoneNumber());
+        bindString(statement, i++, restaurant.getWebsite());
+        List<String> openingHours = restaurant.getOpeningHoursText();
+        bindString(statement, i++, openingHours.isEmpty() ? null : String.join("\n", openingHours));
+        if (restaurant.getWeeklyHours() != null) {
+            statement.bindBlob(i++, encodeWeeklyHours(restaurant.getWeeklyHours()));
+        } else {
+            statement.bindNull(i++);
+        }
+        statement.bindLong(i, now);
+    }
+
+    private static void bindBasic(SQLiteStatement statement, Restaurant restaurant, long now) {
+        bindString(statement, 1, restaurant.getName());
+        bindString(statement, 2, restaurant.getAddress());
+        statement.bindDouble(3, restaurant.getLatitude());
+        statement.bindDouble(4, restaurant.getLongitude());
+        statement.bindDouble(5, restaurant.getRating());
+        statement.bindLong(6, restaurant.getPriceLevel());
+        statement.bindLong(7, restaurant.getTypes());
+        statement.bindLong(8, restaurant.isOpenNow() ? 1 : 0);
+        statement.bindDouble(9, restaurant.getHalalScore());
+        statement.bindDouble(10, restaurant.getIftarScore());
+        bindString(statement, 11, restaurant.getPhotoReference());
+        statement.bindLong(12, now);
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Returns stored restaurants within radiusMeters, nearest first, with their distance set
+     */
+    public List<Restaurant> queryRadius(double latitude, double longitude, double radiusMeters, int limit) {
+        double dLat = radiusMeters / GeoHash.METERS_PER_DEGREE;
+        double cosLat = Math.max(0.01, Math.cos(Math.toRadians(Math.min(90, Math.abs(latitude) + dLat))));
+        double dLng = radiusMeters / (GeoHash.METERS_PER_DEGREE * cosLat);
+        String[] args = {
+                String.valueOf(latitude - dLat), String.valueOf(latitude + dLat),
+                String.valueOf(longitude - dLng), String.valueOf(longitude + dLng)
+        };
+
+        String sql;
+        if (hasRtree) {
+            sql = "SELECT r.* FROM " + TABLE_GEO + " g JOIN " + TABLE_RESTAURANTS + " r ON r."
+                    + KEY_ROWID + " = g.id WHERE g.min_lat >= ? AND g.max_lat <= ?"
+                    + " AND g.min_lng >= ? AND g.max_lng <= ?";
+        } else {
+            sql = "SELECT * FROM " + TABLE_RESTAURANTS + " WHERE " + KEY_LATITUDE + " BETWEEN ? AND ?"
+                    + " AND " + KEY_LONGITUDE + " BETWEEN ? AND ?";
+        }
+
+        List<Restaurant> restaurants = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            CursorReader reader = new CursorReader(cursor);
+            while (cursor.moveToNext()) {
+                Restaurant restaurant = reader.read();
+                double distance = GeoHash.distanceMeters(latitude, longitude,
+                        restaurant.getLatitude(), restaurant.getLongitude());
+                if (distance <= radiusMeters) {
+                    restaurants.add(restaurant.withDistance(distance));
+                }
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error querying restaurants by location", e);
+        }
+
+        Collections.sort(restaurants, (a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return restaurants.size() > limit ? new ArrayList<>(restaurants.subList(0, limit)) : restaurants;
+    }
+
+    /**
+     * Searches stored restaurants by name or address, each word matching as a prefix
+     */
+    public List<Restaurant> search(String query, int limit) {
+        List<String> words = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            // Keep letters and digits only, FTS operators in user input would break the query
+            String clean = word.replaceAll("[^\\p{L}\\p{N}]", "");
+            if (!clean.isEmpty()) words.add(clean);
+        }
+
+        List<Restaurant> restaurants = new ArrayList<>();
+        if (words.isEmpty()) return restaurants;
+
+        String sql;
+        String[] args;
+        if (hasFts) {
+            StringBuilder match = new StringBuilder();
+            for (String word : words) {
+                if (match.length() > 0) match.append(' ');
+                match.append(word).append('*');
+            }
+            sql = "SELECT r.* FROM " + TABLE_FTS + " f JOIN " + TABLE_RESTAURANTS + " r ON r."
+                    + KEY_ROWID + " = f.docid WHERE " + TABLE_FTS + " MATCH ? LIMIT " + limit;
+            args = new String[]{match.toString()};
+        } else {
+            StringBuilder where = new StringBuilder();
+            args = new String[words.size() * 2];
+            for (int i = 0; i < words.size(); i++) {
+                if (i > 0) where.append(" AND ");
+                where.append("(").append(KEY_NAME).append(" LIKE ? OR ").append(KEY_ADDRESS).append(" LIKE ?)");
+                args[2 * i] = "%" + words.get(i) + "%";
+                args[2 * i + 1] = args[2 * i];
+            }
+            sql = "SELECT * FROM " + TABLE_RESTAURANTS + " WHERE " + where + " LIMIT " + limit;
+        }
+
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            CursorReader reader = new CursorReader(cursor);
+            while (cursor.moveToNext()) {
+                restaurants.add(reader.read());
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error searching restaurants", e);
+        }
+        return restaurants;
+    }
+
+    /**
+     * Returns the most recently updated restaurants
+     */
+    public List<Restaurant> loadRecent(int limit) {
+        List<Restaurant> restaurants = new ArrayList<>();
+        String sql = "SELECT * FROM " + TABLE_RESTAURANTS + " ORDER BY " + KEY_UPDATED_AT + " DESC LIMIT " + limit;
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, null)) {
+            CursorReader reader = new CursorReader(cursor);
+            while (cursor.moveToNext()) {
+                restaurants.add(reader.read());
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error loading restaurants", e);
+        }
+        return restaurants;
+    }
+
+    /**
+     * Interface for receiving stored coverage entries
+     */
+    public interface CoverageConsumer {
+        void onCoverage(double latitude, double longitude, double radiusMeters, long time);
+    }
+
+    /**
+     * Reads the coverage entries recorded since the given time
+     */
+    public void loadCoverage(long since, CoverageConsumer consumer) {
+        String sql = "SELECT * FROM " + TABLE_COVERAGE + " WHERE " + KEY_UPDATED_AT + " >= ?";
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, new String[]{String.valueOf(since)})) {
+            while (cursor.moveToNext()) {
+                consumer.onCoverage(cursor.getDouble(0), cursor.getDouble(1), cursor.getDouble(2), cursor.getLong(3));
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error loading coverage", e);
+        }
+    }
+
+    /**
+     * Runs a task on the database thread
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Deletes restaurants and coverage older than MAX_AGE_MS and compacts the text index
+     */
+    private void prune() {
+        long cutoff = System.currentTimeMillis() - MAX_AGE_MS;
+        String[] args = {String.valueOf(cutoff)};
+        String stale = "SELECT " + KEY_ROWID + " FROM " + TABLE_RESTAURANTS + " WHERE " + KEY_UPDATED_AT + " < ?";
+
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (hasRtree) db.execSQL("DELETE FROM " + TABLE_GEO + " WHERE id IN (" + stale + ")", args);
+                if (hasFts) db.execSQL("DELETE FROM " + TABLE_FTS + " WHERE docid IN (" + stale + ")", args);
+                db.execSQL("DELETE FROM " + TABLE_RESTAURANTS + " WHERE " + KEY_UPDATED_AT + " < ?", args);
+                db.execSQL("DELETE FROM " + TABLE_COVERAGE + " WHERE " + KEY_UPDATED_AT + " < ?", args);
+                db.execSQL("DELETE FROM " + TABLE_RESULT_SETS + " WHERE " + KEY_UPDATED_AT + " < ?", args);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (hasFts) {
+                db.execSQL("INSERT INTO " + TABLE_FTS + "(" + TABLE_FTS + ") VALUES ('optimize')");
+            }
+        } catch (SQLException e) {
+            Log.e(TAG, "Error pruning restaurants", e);
+        }
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE name = ?", new String[]{table})) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    private static byte[] encodeWeeklyHours(WeeklyOpeningHours hours) {
+        long[] words = hours.toLongArray();
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * 8);
+        buffer.asLongBuffer().put(words);
+        return buffer.array();
+    }
+
+    private static WeeklyOpeningHours decodeWeeklyHours(byte[] blob) {
+        long[] words = new long[blob.length / 8];
+        ByteBuffer.wrap(blob).asLongBuffer().get(words);
+        return WeeklyOpeningHours.fromLongArray(words);
+    }
+
+    /**
+     * Reads restaurants from a cursor over the restaurants table, resolving column
+     * indices once
+     */
+    private static class CursorReader {
+        private final Cursor cursor;
+        private final int placeId, name, address, latitude, longitude, rating, priceLevel, types,
+                openNow, halalScore, iftarScore, photoReference, hasDetails, phone, website,
+                openingHours, weeklyHours;
+
+        CursorReader(Cursor cursor) {
+            this.cursor = cursor;
+            placeId = cursor.getColumnIndexOrThrow(KEY_PLACE_ID);
+            name = cursor.getColumnIndexOrThrow(KEY_NAME);
+            address = cursor.getColumnIndexOrThrow(KEY_ADDRESS);
+            latitude = cursor.getColumnIndexOrThrow(KEY_LATITUDE);
+            longitude = cursor.getColumnIndexOrThrow(KEY_LONGITUDE);
+            rating = cursor.getColumnIndexOrThrow(KEY_RATING);
+            priceLevel = cursor.getColumnIndexOrThrow(KEY_PRICE_LEVEL);
+            types = cursor.getColumnIndexOrThrow(KEY_TYPES);
+            openNow = cursor.getColumnIndexOrThrow(KEY_OPEN_NOW);
+            halalScore = cursor.getColumnIndexOrThrow(KEY_HALAL_SCORE);
+            iftarScore = cursor.getColumnIndexOrThrow(KEY_IFTAR_SCORE);
+            photoReference = cursor.getColumnIndexOrThrow(KEY_PHOTO_REFERENCE);
+            hasDetails = cursor.getColumnIndexOrThrow(KEY_HAS_DETAILS);
+            phone = cursor.getColumnIndexOrThrow(KEY_PHONE);
+            website = cursor.getColumnIndexOrThrow(KEY_WEBSITE);
+            openingHours = cursor.getColumnIndexOrThrow(KEY_OPENING_HOURS);
+            weeklyHours = cursor.getColumnIndexOrThrow(KEY_WEEKLY_HOURS);
+        }
+
+        Restaurant read() {
+            float halal = cursor.getFloat(halalScore);
+            float iftar = cursor.getFloat(iftarScore);
+            Restaurant.Builder builder = new Restaurant.Builder(cursor.getString(placeId), cursor.getString(name))
+                    .setAddress(cursor.getString(address))
+                    .setLocation(cursor.getDouble(latitude), cursor.getDouble(longitude))
+                    .setRating(cursor.getFloat(rating))
+                    .setPriceLevel(cursor.getInt(priceLevel))
+                    .setTypes(cursor.getLong(types))
+                    .setOpenNow(cursor.getInt(openNow) != 0)
+                    .setHalalScore(halal)
+                    .setIftarScore(iftar)
+                    .setHalal(halal >= RestaurantClassifier.LIKELY_THRESHOLD)
+                    .setHasIftarSpecial(iftar >= RestaurantClassifier.LIKELY_THRESHOLD)
+                    .setPhotoReference(cursor.getString(photoReference))
+                    .setHasDetails(cursor.getInt(hasDetails) != 0)
+                    .setPhoneNumber(cursor.getString(phone))
+                    .setWebsite(cursor.getString(website));
+
+            String hoursText = cursor.getString(openingHours);
+            if (hoursText != null) {
+                builder.setOpeningHoursText(Arrays.asList(hoursText.split("\n")));
+            }
+            if (!cursor.isNull(weeklyHours)) {
+                builder.setWeeklyHours(decodeWeeklyHours(cursor.getBlob(weeklyHours)));
+            }
+            return builder.build();
+        }
+    }
+}
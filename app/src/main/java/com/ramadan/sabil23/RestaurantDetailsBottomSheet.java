@@ -15,6 +15,7 @@ import androidx.annotation.Nullable;
 import com.bumptech.glide.Glide;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
+import com.ramadan.sabil23.model.Restaurant;
 
 /**
  * Bottom sheet dialog fragment for displaying restaurant details
@@ -23,7 +24,7 @@ public class RestaurantDetailsBottomSheet extends BottomSheetDialogFragment {
     private static final String TAG = "RestaurantDetailsSheet";
 
     // Restaurant data
-    private RestaurantManager.Restaurant restaurant;
+    private Restaurant restaurant;
 
     // Context
     private Context context;
@@ -34,7 +35,7 @@ public class RestaurantDetailsBottomSheet extends BottomSheetDialogFragment {
     /**
      * Constructor
      */
-    public RestaurantDetailsBottomSheet(Context context, RestaurantManager.Restaurant restaurant) {
+    public RestaurantDetailsBottomSheet(Context context, Restaurant restaurant) {
         this.context = context;
         this.restaurant = restaurant;
         this.navigationManager = NavigationManager.getInstance(context);
@@ -94,11 +95,12 @@ public class RestaurantDetailsBottomSheet extends BottomSheetDialogFragment {
         }
 
         // Load photo if available
-        if (restaurant.getPhotoUrl() != null && !restaurant.getPhotoUrl().isEmpty()) {
+        String photoUrl = RestaurantManager.getInstance(context).getPhotoUrl(restaurant);
+        if (photoUrl != null && !photoUrl.isEmpty()) {
             try {
                 // Use Glide to load the image
                 Glide.with(context)
-                        .load(restaurant.getPhotoUrl())
+                        .load(photoUrl)
                         .placeholder(R.drawable.placeholder_restaurant)
                         .into(photoImageView);
                 photoImageView.setVisibility(View.VISIBLE);
@@ -131,7 +133,7 @@ public class RestaurantDetailsBottomSheet extends BottomSheetDialogFragment {
             navigationManager.launchGoogleMapsNavigation(
                     context,
                     currentLocation,
-                    restaurant.getLatLng(),
+                    restaurant.getPosition(),
                     NavigationManager.MODE_DRIVING);
 
             // Dismiss the bottom sheet
@@ -0,0 +1,234 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory facet index over loaded restaurants.
+ *
+ * Every facet value keeps one bitset with a bit per restaurant, so applying any
+ * combination of filters is a handful of word-wide ANDs and the count for each facet
+ * is a popcount, without going back to the network or scanning the restaurant list.
+ *
+ * A filter is a bit mask of selected facets. Price levels are OR-ed together, all other
+ * facets are AND-ed.
+ */
+public class RestaurantFacetIndex {
+
+    // Facets
+    public static final int FACET_PRICE_UNKNOWN = 0;
+    public static final int FACET_PRICE_INEXPENSIVE = 1;
+    public static final int FACET_PRICE_MODERATE = 2;
+    public static final int FACET_PRICE_EXPENSIVE = 3;
+    public static final int FACET_PRICE_VERY_EXPENSIVE = 4;
+    public static final int FACET_OPEN_NOW = 5;
+    public static final int FACET_HALAL = 6;
+    public static final int FACET_IFTAR_SPECIAL = 7;
+    public static final int FACET_RATING_3_PLUS = 8;
+    public static final int FACET_RATING_4_PLUS = 9;
+    public static final int FACET_RATING_4_5_PLUS = 10;
+    public static final int FACET_COUNT = 11;
+
+    // Facets combined with OR instead of AND
+    private static final long PRICE_FACETS = (1L << (FACET_PRICE_VERY_EXPENSIVE + 1)) - 1;
+
+    private final List<Restaurant> restaurants = new ArrayList<>();
+    private long[][] bitsets = new long[FACET_COUNT][1];
+    private long[] all = new long[1];
+
+    public RestaurantFacetIndex() {
+    }
+
+    public RestaurantFacetIndex(List<Restaurant> restaurants) {
+        addAll(restaurants);
+    }
+
+    /**
+     * Returns the filter mask for a single facet
+     */
+    public static long facet(int facet) {
+        return 1L << facet;
+    }
+
+    /**
+     * Adds restaurants to the index
+     */
+    public void addAll(List<Restaurant> newRestaurants) {
+        ensureCapacity(restaurants.size() + newRestaurants.size());
+        for (Restaurant restaurant : newRestaurants) {
+            add(restaurant);
+        }
+    }
+
+    /**
+     * Adds a restaurant and returns its position in the index
+     */
+    public int add(Restaurant restaurant) {
+        int index = restaurants.size();
+        ensureCapacity(index + 1);
+        restaurants.add(restaurant);
+        set(all, index);
+
+        int priceLevel = restaurant.getPriceLevel();
+        if (priceLevel < RestaurantManager.PRICE_INEXPENSIVE || priceLevel > RestaurantManager.PRICE_VERY_EXPENSIVE) {
+            priceLevel = FACET_PRICE_UNKNOWN;
+        }
+        set(bitsets[FACET_PRICE_UNKNOWN + priceLevel], index);
+
+        if (restaurant.isOpenNow()) set(bitsets[FACET_OPEN_NOW], index);
+        if (restaurant.isHalal()) set(bitsets[FACET_HALAL], index);
+        if (restaurant.hasIftarSpecial()) set(bitsets[FACET_IFTAR_SPECIAL], index);
+
+        float rating = restaurant.getRating();
+        if (rating >= 3f) set(bitsets[FACET_RATING_3_PLUS], index);
+        if (rating >= 4f) set(bitsets[FACET_RATING_4_PLUS], index);
+        if (rating >= 4.5f) set(bitsets[FACET_RATING_4_5_PLUS], index);
+
+        return index;
+    }
+
+    public int size() {
+        return restaurants.size();
+    }
+
+    public Restaurant get(int index) {
+        return restaurants.get(index);
+    }
+
+    /**
+     * Checks if the restaurant at index passes the filter
+     */
+    public boolean matches(int index, long filter) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+
+        long priceFilter = filter & PRICE_FACETS;
+        if (priceFilter != 0) {
+            boolean anyPrice = false;
+            for (int f = FACET_PRICE_UNKNOWN; f <= FACET_PRICE_VERY_EXPENSIVE; f++) {
+                if ((priceFilter & facet(f)) != 0 && (bitsets[f][word] & bit) != 0) {
+                    anyPrice = true;
+                    break;
+                }
+            }
+            if (!anyPrice) return false;
+        }
+
+        for (int f = FACET_OPEN_NOW; f < FACET_COUNT; f++) {
+            if ((filter & facet(f)) != 0 && (bitsets[f][word] & bit) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the restaurants that pass the filter, in index order
+     */
+    public List<Restaurant> select(long filter) {
+        long[] match = match(filter);
+        List<Restaurant> selected = new ArrayList<>(cardinality(match));
+        for (int w = 0; w < match.length; w++) {
+            long word = match[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                selected.add(restaurants.get((w << 6) + bit));
+                word &= word - 1;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Counts the restaurants that pass the filter
+     */
+    public int count(long filter) {
+        return cardinality(match(filter));
+    }
+
+    /**
+     * Counts, for every facet, how many restaurants would match if that facet were
+     * selected on top of the current filter. Price counts ignore the selected prices so
+     * they read as alternatives.
+     */
+    public int[] facetCounts(long filter) {
+        int[] counts = new int[FACET_COUNT];
+        long[] current = match(filter);
+        long[] withoutPrice = match(filter & ~PRICE_FACETS);
+
+        for (int f = 0; f < FACET_COUNT; f++) {
+            long[] base = (facet(f) & PRICE_FACETS) != 0 ? withoutPrice : current;
+            counts[f] = andCardinality(base, bitsets[f]);
+        }
+        return counts;
+    }
+
+    /**
+     * Computes the bitset of restaurants passing the filter
+     */
+    private long[] match(long filter) {
+        long[] result = all.clone();
+
+        long priceFilter = filter & PRICE_FACETS;
+        if (priceFilter != 0) {
+            long[] prices = new long[result.length];
+            for (int f = FACET_PRICE_UNKNOWN; f <= FACET_PRICE_VERY_EXPENSIVE; f++) {
+                if ((priceFilter & facet(f)) != 0) {
+                    or(prices, bitsets[f]);
+                }
+            }
+            and(result, prices);
+        }
+
+        for (int f = FACET_OPEN_NOW; f < FACET_COUNT; f++) {
+            if ((filter & facet(f)) != 0) {
+                and(result, bitsets[f]);
+            }
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int count) {
+        int words = (count + 63) >>> 6;
+        if (words <= all.length) return;
+
+        int newWords = Math.max(words, all.length * 2);
+        all = Arrays.copyOf(all, newWords);
+        for (int f = 0; f < FACET_COUNT; f++) {
+            bitsets[f] = Arrays.copyOf(bitsets[f], newWords);
+        }
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void and(long[] target, long[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= other[i];
+        }
+    }
+
+    private static void or(long[] target, long[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= other[i];
+        }
+    }
+
+    private static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static int andCardinality(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,173 @@
+package com.ramadan.sabil23;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.android.gms.maps.model.TileProvider;
+import com.google.maps.android.heatmaps.HeatmapTileProvider;
+import com.google.maps.android.heatmaps.WeightedLatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Heatmap of every cached restaurant, shown instead of markers at city scale.
+ *
+ * Points come from the RestaurantColumnStore and are weighted by how likely the
+ * restaurant is halal or serves Iftar and by its rating. The heatmap is rebuilt on a
+ * background thread when more restaurants have been cached, and rendered tiles are
+ * cached until the next rebuild. The map SDK requests tiles on its own threads.
+ *
+ * Must be used on the main thread.
+ */
+public class RestaurantHeatmap {
+    private static final String TAG = "RestaurantHeatmap";
+
+    // Blur radius in pixels, the tile provider allows at most 50
+    private static final int RADIUS_PX = 40;
+
+    // Rendered tiles kept between redraws
+    private static final int TILE_CACHE_SIZE = 128;
+
+    // Weight of a restaurant without a rating
+    private static final float UNRATED_FACTOR = 0.5f;
+
+    private final GoogleMap map;
+    private final RestaurantColumnStore store;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CachingTileProvider tileProvider = new CachingTileProvider();
+
+    private TileOverlay overlay;
+    private boolean visible;
+    private boolean building;
+    private boolean released;
+
+    // Number of stored restaurants the heatmap was built from
+    private int builtSize = -1;
+
+    public RestaurantHeatmap(GoogleMap map, RestaurantColumnStore store) {
+        this.map = map;
+        this.store = store;
+    }
+
+    /**
+     * Shows or hides the heatmap, showing it rebuilds it if restaurants were cached since
+     */
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+        if (overlay != null) {
+            overlay.setVisible(visible);
+        }
+        refresh();
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Rebuilds the heatmap in the background if it is visible and out of date
+     */
+    public void refresh() {
+        if (released || !visible || building || store.size() == builtSize) return;
+        building = true;
+
+        executor.execute(() -> {
+            List<WeightedLatLng> points = collectPoints();
+            // The builder computes the bounds and the kernel, keep it off the main thread
+            HeatmapTileProvider provider = points.isEmpty() ? null
+                    : new HeatmapTileProvider.Builder().weightedData(points).radius(RADIUS_PX).build();
+
+            mainHandler.post(() -> {
+                // The map may be gone once the heatmap is released
+                if (released) return;
+                building = false;
+                builtSize = points.size();
+                tileProvider.setProvider(provider);
+                if (overlay == null) {
+                    overlay = map.addTileOverlay(new TileOverlayOptions()
+                            .tileProvider(tileProvider)
+                            .visible(visible));
+                } else {
+                    overlay.clearTileCache();
+                }
+
+                // Restaurants cached while building are picked up by another pass
+                refresh();
+            });
+        });
+    }
+
+    /**
+     * Removes the overlay and stops the background thread. A build still running is
+     * dropped and the heatmap cannot be shown again.
+     */
+    public void release() {
+        released = true;
+        executor.shutdownNow();
+        if (overlay != null) {
+            overlay.remove();
+            overlay = null;
+        }
+    }
+
+    private List<WeightedLatLng> collectPoints() {
+        synchronized (store) {
+            int size = store.size();
+            List<WeightedLatLng> points = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                float confidence = Math.max(store.getHalalScore(row), store.getIftarScore(row));
+                float rating = store.getRating(row);
+                float ratingFactor = rating > 0 ? rating / 5f : UNRATED_FACTOR;
+
+                // Every restaurant counts a little, likely Iftar spots with good ratings most
+                double weight = (0.25 + 0.75 * confidence) * (0.5 + 0.5 * ratingFactor);
+                points.add(new WeightedLatLng(
+                        new LatLng(store.getLatitude(row), store.getLongitude(row)), weight));
+            }
+            return points;
+        }
+    }
+
+    /**
+     * Serves heatmap tiles from a cache, dropped whenever the heatmap is rebuilt
+     */
+    private static class CachingTileProvider implements TileProvider {
+        private final LruCache<String, Tile> tiles = new LruCache<>(TILE_CACHE_SIZE);
+        private volatile HeatmapTileProvider provider;
+        private volatile int generation;
+
+        void setProvider(HeatmapTileProvider provider) {
+            this.provider = provider;
+            generation++;
+            tiles.evictAll();
+        }
+
+        @Override
+        public Tile getTile(int x, int y, int zoom) {
+            HeatmapTileProvider current = provider;
+            if (current == null) return NO_TILE;
+
+            String key = zoom + "/" + x + "/" + y;
+            Tile tile = tiles.get(key);
+            if (tile != null) return tile;
+
+            int tileGeneration = generation;
+            tile = current.getTile(x, y, zoom);
+            // Tiles drawn from a replaced heatmap are not cached
+            if (tile != null && tileGeneration == generation && current == provider) {
+                tiles.put(key, tile);
+            }
+            return tile;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ramadan.sabil23;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Marker;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Info window contents for restaurant markers.
+ *
+ * The layout is inflated once and reused for every marker, the map draws the returned
+ * view into a bitmap so one view is enough. The texts of each restaurant are formatted
+ * by precompute() when search results arrive, so a tap only sets a few strings.
+ */
+public class RestaurantInfoWindowAdapter implements GoogleMap.InfoWindowAdapter {
+    private static final String TAG = "RestaurantInfoWindowAdapter";
+
+    private final Context context;
+
+    // Formatted texts by place ID, filled from search callbacks
+    private final Map<String, DisplayStrings> displayStrings = new ConcurrentHashMap<>();
+
+    // Reused view, inflated on the first tap
+    private View view;
+    private TextView nameTextView;
+    private TextView statusTextView;
+    private TextView addressTextView;
+    private TextView ratingTextView;
+
+    public RestaurantInfoWindowAdapter(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Formats the texts of restaurants ahead of any tap, may be called from any thread
+     */
+    public void precompute(List<Restaurant> restaurants) {
+        for (Restaurant restaurant : restaurants) {
+            DisplayStrings strings = displayStrings.get(restaurant.getId());
+            if (strings == null || strings.restaurant != restaurant) {
+                displayStrings.put(restaurant.getId(), new DisplayStrings(restaurant));
+            }
+        }
+    }
+
+    /**
+     * Forgets every formatted text, called when a new search starts so texts of
+     * restaurants no longer shown do not pile up
+     */
+    public void clear() {
+        displayStrings.clear();
+    }
+
+    @Override
+    public View getInfoWindow(Marker marker) {
+        return null; // Use default window frame
+    }
+
+    @Override
+    public View getInfoContents(Marker marker) {
+        // Get restaurant data from marker tag
+        if (!(marker.getTag() instanceof Restaurant)) return null;
+        Restaurant restaurant = (Restaurant) marker.getTag();
+
+        DisplayStrings strings = displayStrings.get(restaurant.getId());
+        if (strings == null || strings.restaurant != restaurant) {
+            strings = new DisplayStrings(restaurant);
+            displayStrings.put(restaurant.getId(), strings);
+        }
+
+        if (view == null) {
+            view = LayoutInflater.from(context).inflate(R.layout.bottom_sheet_restaurant, null);
+            nameTextView = view.findViewById(R.id.restaurant_name);
+            statusTextView = view.findViewById(R.id.restaurant_status);
+            addressTextView = view.findViewById(R.id.restaurant_address);
+            ratingTextView = view.findViewById(R.id.restaurant_rating);
+        }
+
+        nameTextView.setText(strings.name);
+        statusTextView.setText(strings.status);
+        addressTextView.setText(strings.address);
+
+        // The view is reused, reset what the previous restaurant set
+        if (strings.rating != null) {
+            ratingTextView.setText(strings.rating);
+            ratingTextView.setVisibility(View.VISIBLE);
+        } else {
+            ratingTextView.setVisibility(View.GONE);
+        }
+
+        return view;
+    }
+
+    /**
+     * Texts shown for one restaurant, kept with the restaurant they were made from
+     */
+    private static class DisplayStrings {
+        final Restaurant restaurant;
+        final String name;
+        final String status;
+        final String address;
+        final String rating;
+
+        DisplayStrings(Restaurant restaurant) {
+            this.restaurant = restaurant;
+            this.name = restaurant.getName();
+            this.status = restaurant.isOpenNow() ? "Open Now" : "Closed";
+            this.address = restaurant.getAddress();
+            this.rating = restaurant.getRating() > 0
+                    ? String.format(Locale.getDefault(), "%.1f ★", restaurant.getRating())
+                    : null;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.util.Log;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.api.model.RectangularBounds;
+import com.ramadan.sabil23.model.Restaurant;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -14,14 +15,19 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -39,11 +45,30 @@ public class RestaurantManager {
     private static final String PLACES_API_BASE_URL = "https://maps.googleapis.com/maps/api/place/";
     private static final String NEARBY_SEARCH_ENDPOINT = "nearbysearch/json?";
     private static final String PLACE_DETAILS_ENDPOINT = "details/json?";
+    private static final String PHOTO_ENDPOINT = "photo?";
+    private static final int PHOTO_MAX_WIDTH = 400;
 
     // Search parameters
     private static final int DEFAULT_RADIUS = 5000; // 5km
     private static final int MAX_RESULTS = 20;
 
+    // How many stored restaurants to load into memory at startup
+    private static final int WARM_UP_LIMIT = 500;
+
+    // How far from the user a stored result set may have been searched to be shown at launch
+    private static final int LAST_RESULTS_MAX_DISTANCE = 2000; // 2km
+
+    // Adaptive search parameters
+    public static final int ADAPTIVE_INITIAL_RADIUS = 1000; // 1km
+    public static final int ADAPTIVE_MAX_RADIUS = 50000; // 50km, the Places API limit
+    private static final int ADAPTIVE_GROWTH_FACTOR = 2;
+
+    // How long a restaurant must stay open after Maghrib to count as open for Iftar
+    public static final int IFTAR_WINDOW_MINUTES = 60;
+
+    // Place Details requests for opening hours in flight at once, the rest wait
+    private static final int MAX_PARALLEL_HOURS_REQUESTS = 4;
+
     // Restaurant types
     public static final String TYPE_ALL = "restaurant";
     public static final String TYPE_HALAL = "halal";
@@ -60,9 +85,19 @@ public class RestaurantManager {
     public static final int SORT_DISTANCE = 0;
     public static final int SORT_RATING = 1;
     public static final int SORT_PRICE = 2;
+    public static final int SORT_COMPOSITE = 3;
 
     // Cache for restaurant data
-    private Map<String, Restaurant> restaurantCache = new HashMap<>();
+    private Map<String, Restaurant> restaurantCache = new ConcurrentHashMap<>();
+
+    // Every restaurant loaded so far, in columns for batch distance, filter and rank
+    private final RestaurantColumnStore columnStore = new RestaurantColumnStore();
+
+    // Every restaurant loaded so far, bucketed by location for local lookups
+    private final RestaurantSpatialIndex spatialIndex = new RestaurantSpatialIndex();
+
+    // Restaurants and coverage kept across launches
+    private final RestaurantDatabase database;
 
     // API key
     private String apiKey;
@@ -70,6 +105,13 @@ public class RestaurantManager {
     // HTTP client
     private OkHttpClient httpClient;
 
+    // Halal / Iftar keyword classifier
+    private RestaurantClassifier classifier;
+
+    // Opening hours lookups waiting for a free request, guarded by itself
+    private final ArrayDeque<Runnable> hoursQueue = new ArrayDeque<>();
+    private int hoursRequestsRunning;
+
     // Singleton instance
     private static RestaurantManager instance;
 
@@ -92,157 +134,227 @@ public class RestaurantManager {
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .build();
+        this.classifier = RestaurantClassifier.getInstance(context);
+        this.database = RestaurantDatabase.getInstance(context);
+
+        // Load what earlier launches stored so the first searches can be answered locally
+        database.execute(this::warmUp);
+    }
+
+    /**
+     * Loads recently stored restaurants and network coverage into memory
+     */
+    private void warmUp() {
+        List<Restaurant> loaded = new ArrayList<>();
+        for (Restaurant restaurant : database.loadRecent(WARM_UP_LIMIT)) {
+            // Restaurants the network returned in the meantime are newer
+            if (restaurantCache.putIfAbsent(restaurant.getId(), restaurant) == null) {
+                loaded.add(restaurant);
+            }
+        }
+        columnStore.putAll(loaded);
+        spatialIndex.putAll(loaded);
+
+        long since = System.currentTimeMillis() - RestaurantSpatialIndex.COVERAGE_TTL_MS;
+        database.loadCoverage(since, spatialIndex::markCovered);
+        Log.d(TAG, "Loaded " + loaded.size() + " stored restaurants");
+    }
+
+    /**
+     * Interface for restaurant search callbacks
+     */
+    public interface RestaurantSearchCallback {
+        void onRestaurantsFound(List<Restaurant> restaurants);
+        void onSearchFailed(String errorMessage);
     }
 
     /**
-     * Restaurant data model
-     */
-    public static class Restaurant {
-        private String id;
-        private String name;
-        private String address;
-        private double latitude;
-        private double longitude;
-        private float rating;
-        private int priceLevel;
-        private boolean isOpenNow;
-        private String photoUrl;
-        private double distance;
-        private boolean isHalal;
-        private boolean hasIftarSpecial;
-        private List<String> types;
-        private Map<String, String> openingHours;
-        private String phoneNumber;
-        private String website;
-
-        public Restaurant(String id, String name) {
-            this.id = id;
-            this.name = name;
-            this.types = new ArrayList<>();
-            this.openingHours = new HashMap<>();
+     * Interface for adaptive search callbacks. Each ring delivers only the restaurants
+     * that were not returned by a smaller ring, so the UI can add them as they arrive.
+     */
+    public interface AdaptiveSearchCallback {
+        void onRingLoaded(List<Restaurant> newRestaurants, int radius);
+        void onSearchComplete(List<Restaurant> restaurants, int radius);
+        void onSearchFailed(String errorMessage);
+    }
+
+    /**
+     * Handle for a running search, cancelling it also cancels its network request
+     */
+    public static class AdaptiveSearch {
+        private volatile boolean cancelled;
+        private volatile Call call;
+
+        public void cancel() {
+            cancelled = true;
+            Call running = call;
+            if (running != null) running.cancel();
         }
 
-        // Getters and setters
-        public String getId() { return id; }
-        public String getName() { return name; }
-        public String getAddress() { return address; }
-        public void setAddress(String address) { this.address = address; }
-        public double getLatitude() { return latitude; }
-        public void setLatitude(double latitude) { this.latitude = latitude; }
-        public double getLongitude() { return longitude; }
-        public void setLongitude(double longitude) { this.longitude = longitude; }
-        public float getRating() { return rating; }
-        public void setRating(float rating) { this.rating = rating; }
-        public int getPriceLevel() { return priceLevel; }
-        public void setPriceLevel(int priceLevel) { this.priceLevel = priceLevel; }
-        public boolean isOpenNow() { return isOpenNow; }
-        public void setOpenNow(boolean openNow) { isOpenNow = openNow; }
-        public String getPhotoUrl() { return photoUrl; }
-        public void setPhotoUrl(String photoUrl) { this.photoUrl = photoUrl; }
-        public double getDistance() { return distance; }
-        public void setDistance(double distance) { this.distance = distance; }
-        public boolean isHalal() { return isHalal; }
-        public void setHalal(boolean halal) { isHalal = halal; }
-        public boolean hasIftarSpecial() { return hasIftarSpecial; }
-        public void setHasIftarSpecial(boolean hasIftarSpecial) { this.hasIftarSpecial = hasIftarSpecial; }
-        public List<String> getTypes() { return types; }
-        public void addType(String type) { this.types.add(type); }
-        public Map<String, String> getOpeningHours() { return openingHours; }
-        public void addOpeningHours(String day, String hours) { this.openingHours.put(day, hours); }
-        public String getPhoneNumber() { return phoneNumber; }
-        public void setPhoneNumber(String phoneNumber) { this.phoneNumber = phoneNumber; }
-        public String getWebsite() { return website; }
-        public void setWebsite(String website) { this.website = website; }
-
-        public LatLng getLatLng() {
-            return new LatLng(latitude, longitude);
+        public boolean isCancelled() { return cancelled; }
+
+        void setCall(Call call) {
+            this.call = call;
+            if (cancelled) call.cancel();
         }
+    }
 
-        /**
-         * Checks if the restaurant is likely to be halal based on its types and name
-         */
-        public boolean checkIfLikelyHalal() {
-            // Check types for halal indicators
-            for (String type : types) {
-                if (type.toLowerCase().contains("halal") ||
-                        type.toLowerCase().contains("muslim") ||
-                        type.toLowerCase().contains("middle_eastern") ||
-                        type.toLowerCase().contains("pakistani") ||
-                        type.toLowerCase().contains("turkish") ||
-                        type.toLowerCase().contains("arabic")) {
-                    return true;
-                }
-            }
+    /**
+     * Interface for restaurant details callbacks
+     */
+    public interface RestaurantDetailsCallback {
+        void onRestaurantDetailsLoaded(Restaurant restaurant);
+        void onDetailsFailed(String errorMessage);
+    }
 
-            // Check name for halal indicators
-            String nameLower = name.toLowerCase();
-            if (nameLower.contains("halal") ||
-                    nameLower.contains("muslim") ||
-                    nameLower.contains("islam") ||
-                    nameLower.contains("mecca") ||
-                    nameLower.contains("medina") ||
-                    nameLower.contains("arabia")) {
-                return true;
-            }
+    /**
+     * Gets the column store holding every restaurant loaded so far
+     */
+    public RestaurantColumnStore getColumnStore() {
+        return columnStore;
+    }
+
+    /**
+     * Gets the spatial index holding every restaurant loaded so far
+     */
+    public RestaurantSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Returns cached restaurants within radius, nearest first, or null if the area
+     * has not been searched on the network recently
+     */
+    public List<Restaurant> findCachedRestaurants(LatLng location, int radius, String type,
+                                                  int priceLevel, boolean openNow) {
+        if (!spatialIndex.isCovered(location.latitude, location.longitude, radius)) {
+            return null;
+        }
 
-            return false;
+        Calendar now = Calendar.getInstance();
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (Restaurant restaurant : spatialIndex.queryRadius(location.latitude, location.longitude, radius)) {
+            if (matchesSearch(restaurant, type, priceLevel, openNow, now)) {
+                restaurants.add(restaurant);
+            }
         }
+        return restaurants;
+    }
 
-        /**
-         * Checks if the restaurant is likely to have Iftar specials based on its types and name
-         */
-        public boolean checkIfLikelyHasIftarSpecial() {
-            // Check name for Iftar indicators
-            String nameLower = name.toLowerCase();
-            if (nameLower.contains("iftar") ||
-                    nameLower.contains("ramadan") ||
-                    nameLower.contains("buffet")) {
-                return true;
+    /**
+     * Answers a search from restaurants in memory or on disk when the network fails,
+     * reporting the error only if nothing is known about the area
+     */
+    private void searchOffline(LatLng location, int radius, String type, int priceLevel,
+                               boolean openNow, String errorMessage, RestaurantSearchCallback callback) {
+        Calendar now = Calendar.getInstance();
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (Restaurant restaurant : spatialIndex.queryRadius(location.latitude, location.longitude, radius)) {
+            if (matchesSearch(restaurant, type, priceLevel, openNow, now)) {
+                restaurants.add(restaurant);
             }
+        }
 
-            // During Ramadan, many Middle Eastern, Pakistani, Turkish restaurants offer Iftar
-            for (String type : types) {
-                if (type.toLowerCase().contains("middle_eastern") ||
-                        type.toLowerCase().contains("pakistani") ||
-                        type.toLowerCase().contains("turkish") ||
-                        type.toLowerCase().contains("arabic") ||
-                        type.toLowerCase().contains("indian") ||
-                        type.toLowerCase().contains("mediterranean")) {
-                    return true;
+        if (restaurants.isEmpty()) {
+            List<Restaurant> stored = database.queryRadius(location.latitude, location.longitude, radius, MAX_RESULTS);
+            for (Restaurant restaurant : stored) {
+                if (matchesSearch(restaurant, type, priceLevel, openNow, now)) {
+                    restaurants.add(restaurant);
                 }
+                restaurantCache.putIfAbsent(restaurant.getId(), restaurant);
             }
+            columnStore.putAll(stored);
+            spatialIndex.putAll(stored);
+        }
 
-            return false;
+        if (restaurants.isEmpty()) {
+            callback.onSearchFailed(errorMessage);
+        } else {
+            Log.d(TAG, "Answered " + radius + "m search offline with " + restaurants.size() + " results");
+            callback.onRestaurantsFound(restaurants);
         }
     }
 
     /**
-     * Interface for restaurant search callbacks
+     * Searches stored restaurants by name or address, on a background thread
      */
-    public interface RestaurantSearchCallback {
-        void onRestaurantsFound(List<Restaurant> restaurants);
-        void onSearchFailed(String errorMessage);
+    public void searchStoredRestaurants(String query, int limit, final RestaurantSearchCallback callback) {
+        database.execute(() -> callback.onRestaurantsFound(database.search(query, limit)));
     }
 
     /**
-     * Interface for restaurant details callbacks
+     * Loads the restaurants last shown nearest to a location, on a background thread.
+     * The list is empty when nothing was shown near there before.
      */
-    public interface RestaurantDetailsCallback {
-        void onRestaurantDetailsLoaded(Restaurant restaurant);
-        void onDetailsFailed(String errorMessage);
+    public void loadLastResults(LatLng location, final RestaurantSearchCallback callback) {
+        database.execute(() -> callback.onRestaurantsFound(database.loadNearestResultSet(
+                location.latitude, location.longitude, LAST_RESULTS_MAX_DISTANCE)));
+    }
+
+    /**
+     * Remembers the restaurants shown for a location so the next launch can show them
+     * before the network answers
+     */
+    public void saveLastResults(LatLng location, List<Restaurant> restaurants) {
+        List<String> placeIds = new ArrayList<>(restaurants.size());
+        for (Restaurant restaurant : restaurants) {
+            placeIds.add(restaurant.getId());
+        }
+        database.saveResultSet(location.latitude, location.longitude, placeIds);
+    }
+
+    /**
+     * Applies the nearby search filters to a cached restaurant
+     */
+    private static boolean matchesSearch(Restaurant restaurant, String type, int priceLevel,
+                                         boolean openNow, Calendar now) {
+        if (type.equals(TYPE_HALAL) && !restaurant.isHalal()) return false;
+        if (type.equals(TYPE_IFTAR_SPECIAL) && !restaurant.hasIftarSpecial()) return false;
+        if (priceLevel > 0 && restaurant.getPriceLevel() > priceLevel) return false;
+        if (openNow) {
+            // The cached open-now flag may be old, prefer the weekly hours when we have them
+            WeeklyOpeningHours hours = restaurant.getWeeklyHours();
+            boolean open = hours != null ? hours.isOpenAt(now) : restaurant.isOpenNow();
+            if (!open) return false;
+        }
+        return true;
     }
 
     /**
-     * Searches for restaurants near a location
+     * Searches for restaurants near a location. Areas searched recently are answered
+     * from the spatial index without a network request. Either way the callback runs
+     * on a background thread, after this method returned.
      */
     public void searchNearbyRestaurants(LatLng location, int radius, String type,
                                         int priceLevel, boolean openNow,
                                         final RestaurantSearchCallback callback) {
+        searchNearbyRestaurants(location, radius, type, priceLevel, openNow, null, callback);
+    }
+
+    /**
+     * Searches for restaurants near a location, the callback is not called once the
+     * search is cancelled
+     */
+    public void searchNearbyRestaurants(LatLng location, int radius, String type,
+                                        int priceLevel, boolean openNow, final AdaptiveSearch search,
+                                        final RestaurantSearchCallback callback) {
+        final int searchRadius = radius > 0 ? radius : DEFAULT_RADIUS;
+        List<Restaurant> cached = findCachedRestaurants(location, searchRadius, type, priceLevel, openNow);
+        if (cached != null) {
+            // Answer on the network callback threads too, callers never see the result inline
+            Log.d(TAG, "Answered " + searchRadius + "m search from the spatial index");
+            httpClient.dispatcher().executorService().execute(() -> {
+                if (search != null && search.isCancelled()) return;
+                callback.onRestaurantsFound(cached);
+            });
+            return;
+        }
+
         // Build the URL
         StringBuilder urlBuilder = new StringBuilder(PLACES_API_BASE_URL)
                 .append(NEARBY_SEARCH_ENDPOINT)
                 .append("location=").append(location.latitude).append(",").append(location.longitude)
-                .append("&radius=").append(radius > 0 ? radius : DEFAULT_RADIUS)
+                .append("&radius=").append(searchRadius)
                 .append("&type=restaurant")
                 .append("&key=").append(apiKey);
 
@@ -268,17 +380,28 @@ public class RestaurantManager {
                 .build();
 
         // Execute request
-        httpClient.newCall(request).enqueue(new Callback() {
+        Call searchCall = httpClient.newCall(request);
+        if (search != null) {
+            search.setCall(searchCall);
+        }
+        searchCall.enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
+                if (search != null && search.isCancelled()) return;
                 Log.e(TAG, "Restaurant search failed", e);
-                callback.onSearchFailed("Network error: " + e.getMessage());
+                searchOffline(location, searchRadius, type, priceLevel, openNow,
+                        "Network error: " + e.getMessage(), callback);
             }
 
             @Override
             public void onResponse(Call call, Response response) throws IOException {
+                if (search != null && search.isCancelled()) {
+                    response.close();
+                    return;
+                }
                 if (!response.isSuccessful()) {
-                    callback.onSearchFailed("API error: " + response.code());
+                    searchOffline(location, searchRadius, type, priceLevel, openNow,
+                            "API error: " + response.code(), callback);
                     return;
                 }
 
@@ -295,6 +418,7 @@ public class RestaurantManager {
 
                     // Parse results
                     List<Restaurant> restaurants = new ArrayList<>();
+                    float[] scores = new float[RestaurantClassifier.CATEGORY_COUNT];
 
                     if (status.equals("OK")) {
                         JSONArray results = jsonResponse.getJSONArray("results");
@@ -306,74 +430,92 @@ public class RestaurantManager {
                             String placeId = result.getString("place_id");
                             String name = result.getString("name");
 
-                            Restaurant restaurant = new Restaurant(placeId, name);
+                            Restaurant.Builder builder = new Restaurant.Builder(placeId, name);
 
                             // Set location
                             JSONObject locationObj = result.getJSONObject("geometry").getJSONObject("location");
-                            restaurant.setLatitude(locationObj.getDouble("lat"));
-                            restaurant.setLongitude(locationObj.getDouble("lng"));
+                            double lat = locationObj.getDouble("lat");
+                            double lng = locationObj.getDouble("lng");
+                            builder.setLocation(lat, lng);
 
                             // Set address
                             if (result.has("vicinity")) {
-                                restaurant.setAddress(result.getString("vicinity"));
+                                builder.setAddress(result.getString("vicinity"));
                             }
 
                             // Set rating
                             if (result.has("rating")) {
-                                restaurant.setRating((float) result.getDouble("rating"));
+                                builder.setRating((float) result.getDouble("rating"));
                             }
 
                             // Set price level
                             if (result.has("price_level")) {
-                                restaurant.setPriceLevel(result.getInt("price_level"));
+                                builder.setPriceLevel(result.getInt("price_level"));
                             }
 
                             // Set open now status
                             if (result.has("opening_hours") && result.getJSONObject("opening_hours").has("open_now")) {
-                                restaurant.setOpenNow(result.getJSONObject("opening_hours").getBoolean("open_now"));
+                                builder.setOpenNow(result.getJSONObject("opening_hours").getBoolean("open_now"));
                             }
 
-                            // Set photo URL
+                            // Keep the photo reference, the URL is built when the photo is shown
                             if (result.has("photos") && result.getJSONArray("photos").length() > 0) {
                                 JSONObject photo = result.getJSONArray("photos").getJSONObject(0);
-                                String photoReference = photo.getString("photo_reference");
-                                String photoUrl = "https://maps.googleapis.com/maps/api/place/photo" +
-                                        "?maxwidth=400" +
-                                        "&photoreference=" + photoReference +
-                                        "&key=" + apiKey;
-                                restaurant.setPhotoUrl(photoUrl);
+                                builder.setPhotoReference(photo.getString("photo_reference"));
                             }
 
-                            // Set types
+                            // Set types, the raw names are only kept long enough to classify
+                            List<String> typeNames = new ArrayList<>();
                             if (result.has("types")) {
                                 JSONArray types = result.getJSONArray("types");
                                 for (int j = 0; j < types.length(); j++) {
-                                    restaurant.addType(types.getString(j));
+                                    String type = types.getString(j);
+                                    typeNames.add(type);
+                                    builder.addType(type);
                                 }
                             }
 
                             // Calculate distance
                             float[] results1 = new float[1];
-                            Location.distanceBetween(
-                                    location.latitude, location.longitude,
-                                    restaurant.getLatitude(), restaurant.getLongitude(),
-                                    results1);
-                            restaurant.setDistance(results1[0]);
+                            Location.distanceBetween(location.latitude, location.longitude, lat, lng, results1);
+                            builder.setDistance(results1[0]);
 
-                            // Check if likely halal
-                            restaurant.setHalal(restaurant.checkIfLikelyHalal());
+                            // Score halal and Iftar likelihood in a single pass over name and types
+                            classifier.classify(name, typeNames, scores);
+                            float halalScore = scores[RestaurantClassifier.CATEGORY_HALAL];
+                            float iftarScore = scores[RestaurantClassifier.CATEGORY_IFTAR];
+                            builder.setHalalScore(halalScore)
+                                    .setIftarScore(iftarScore)
+                                    .setHalal(halalScore >= RestaurantClassifier.LIKELY_THRESHOLD)
+                                    .setHasIftarSpecial(iftarScore >= RestaurantClassifier.LIKELY_THRESHOLD);
 
-                            // Check if likely has Iftar special
-                            restaurant.setHasIftarSpecial(restaurant.checkIfLikelyHasIftarSpecial());
+                            Restaurant restaurant = builder.build();
 
                             // Add to list
                             restaurants.add(restaurant);
 
-                            // Add to cache
-                            restaurantCache.put(placeId, restaurant);
+                            // Add to cache, keeping details fetched earlier
+                            Restaurant cached = restaurantCache.get(placeId);
+                            if (cached == null || !cached.hasDetails()) {
+                                restaurantCache.put(placeId, restaurant);
+                                columnStore.put(restaurant);
+                                spatialIndex.put(restaurant);
+                            }
                         }
                     }
 
+                    // Store for later launches, stored details are kept
+                    database.saveRestaurants(restaurants);
+
+                    // An unfiltered search covers its whole circle, unless the answer was cut
+                    // off at one page and more restaurants are left in the circle
+                    boolean complete = restaurants.size() < MAX_RESULTS && !jsonResponse.has("next_page_token");
+                    if (complete && type.equals(TYPE_ALL) && priceLevel == PRICE_ANY && !openNow) {
+                        long time = System.currentTimeMillis();
+                        spatialIndex.markCovered(location.latitude, location.longitude, searchRadius, time);
+                        database.saveCoverage(location.latitude, location.longitude, searchRadius, time);
+                    }
+
                     // Return results - no need to wrap in runOnUiThread here
                     // The callback implementation should handle threading
                     callback.onRestaurantsFound(restaurants);
@@ -386,6 +528,75 @@ public class RestaurantManager {
         });
     }
 
+    /**
+     * Searches for restaurants starting with a small radius and growing it geometrically
+     * until at least targetCount restaurants are found or maxRadius is reached.
+     * Dense areas are answered by the first small ring, sparse areas keep expanding.
+     */
+    public AdaptiveSearch searchNearbyRestaurantsAdaptive(LatLng location, String type,
+                                                          int priceLevel, boolean openNow,
+                                                          int targetCount, int maxRadius,
+                                                          final AdaptiveSearchCallback callback) {
+        AdaptiveSearch search = new AdaptiveSearch();
+        int radius = Math.min(ADAPTIVE_INITIAL_RADIUS, maxRadius);
+        searchRing(search, location, radius, type, priceLevel, openNow,
+                targetCount, maxRadius, new LinkedHashMap<>(), callback);
+        return search;
+    }
+
+    /**
+     * Runs one ring of an adaptive search and schedules the next one if needed
+     */
+    private void searchRing(final AdaptiveSearch search, final LatLng location, final int radius,
+                            final String type, final int priceLevel, final boolean openNow,
+                            final int targetCount, final int maxRadius,
+                            final Map<String, Restaurant> found,
+                            final AdaptiveSearchCallback callback) {
+        searchNearbyRestaurants(location, radius, type, priceLevel, openNow, search, new RestaurantSearchCallback() {
+            @Override
+            public void onRestaurantsFound(List<Restaurant> restaurants) {
+                if (search.isCancelled()) return;
+
+                // Only pass on restaurants that an inner ring did not already return
+                List<Restaurant> newRestaurants = new ArrayList<>();
+                for (Restaurant restaurant : restaurants) {
+                    if (!found.containsKey(restaurant.getId())) {
+                        found.put(restaurant.getId(), restaurant);
+                        newRestaurants.add(restaurant);
+                    }
+                }
+
+                if (!newRestaurants.isEmpty()) {
+                    callback.onRingLoaded(newRestaurants, radius);
+                }
+
+                // A full page means the area is dense enough, no need to look further
+                boolean saturated = restaurants.size() >= MAX_RESULTS;
+                if (saturated || found.size() >= targetCount || radius >= maxRadius) {
+                    Log.d(TAG, "Adaptive search finished at " + radius + "m with " + found.size() + " results");
+                    callback.onSearchComplete(new ArrayList<>(found.values()), radius);
+                    return;
+                }
+
+                int nextRadius = Math.min(radius * ADAPTIVE_GROWTH_FACTOR, maxRadius);
+                searchRing(search, location, nextRadius, type, priceLevel, openNow,
+                        targetCount, maxRadius, found, callback);
+            }
+
+            @Override
+            public void onSearchFailed(String errorMessage) {
+                if (search.isCancelled()) return;
+
+                // Keep what the smaller rings already found
+                if (found.isEmpty()) {
+                    callback.onSearchFailed(errorMessage);
+                } else {
+                    callback.onSearchComplete(new ArrayList<>(found.values()), radius);
+                }
+            }
+        });
+    }
+
     /**
      * Gets detailed information about a restaurant
      */
@@ -395,7 +606,7 @@ public class RestaurantManager {
             Restaurant cachedRestaurant = restaurantCache.get(placeId);
 
             // If we already have detailed info, return it
-            if (cachedRestaurant.getOpeningHours() != null && !cachedRestaurant.getOpeningHours().isEmpty()) {
+            if (cachedRestaurant.hasDetails()) {
                 callback.onRestaurantDetailsLoaded(cachedRestaurant);
                 return;
             }
@@ -441,66 +652,72 @@ public class RestaurantManager {
                     // Parse result
                     JSONObject result = jsonResponse.getJSONObject("result");
 
-                    // Get or create restaurant object
-                    String placeId = result.getString("place_id");
-                    Restaurant restaurant;
+                    // Start from the cached restaurant, place_id is not among the requested fields
+                    Restaurant cached = restaurantCache.get(placeId);
+                    Restaurant.Builder builder;
 
-                    if (restaurantCache.containsKey(placeId)) {
-                        restaurant = restaurantCache.get(placeId);
+                    if (cached != null) {
+                        builder = cached.toBuilder();
                     } else {
-                        String name = result.getString("name");
-                        restaurant = new Restaurant(placeId, name);
+                        builder = new Restaurant.Builder(placeId, result.getString("name"));
 
                         // Set location
                         JSONObject locationObj = result.getJSONObject("geometry").getJSONObject("location");
-                        restaurant.setLatitude(locationObj.getDouble("lat"));
-                        restaurant.setLongitude(locationObj.getDouble("lng"));
+                        builder.setLocation(locationObj.getDouble("lat"), locationObj.getDouble("lng"));
                     }
 
                     // Set address
                     if (result.has("formatted_address")) {
-                        restaurant.setAddress(result.getString("formatted_address"));
+                        builder.setAddress(result.getString("formatted_address"));
                     }
 
                     // Set phone number
                     if (result.has("formatted_phone_number")) {
-                        restaurant.setPhoneNumber(result.getString("formatted_phone_number"));
+                        builder.setPhoneNumber(result.getString("formatted_phone_number"));
                     }
 
                     // Set website
                     if (result.has("website")) {
-                        restaurant.setWebsite(result.getString("website"));
+                        builder.setWebsite(result.getString("website"));
                     }
 
                     // Set rating
                     if (result.has("rating")) {
-                        restaurant.setRating((float) result.getDouble("rating"));
+                        builder.setRating((float) result.getDouble("rating"));
                     }
 
                     // Set price level
                     if (result.has("price_level")) {
-                        restaurant.setPriceLevel(result.getInt("price_level"));
+                        builder.setPriceLevel(result.getInt("price_level"));
                     }
 
                     // Set opening hours
                     if (result.has("opening_hours") && result.getJSONObject("opening_hours").has("weekday_text")) {
                         JSONArray weekdayText = result.getJSONObject("opening_hours").getJSONArray("weekday_text");
+                        List<String> lines = new ArrayList<>(weekdayText.length());
                         for (int i = 0; i < weekdayText.length(); i++) {
-                            String dayHours = weekdayText.getString(i);
-                            String[] parts = dayHours.split(": ", 2);
-                            if (parts.length == 2) {
-                                restaurant.addOpeningHours(parts[0], parts[1]);
-                            }
+                            lines.add(weekdayText.getString(i));
                         }
+                        builder.setOpeningHoursText(lines);
 
                         // Set open now status
                         if (result.getJSONObject("opening_hours").has("open_now")) {
-                            restaurant.setOpenNow(result.getJSONObject("opening_hours").getBoolean("open_now"));
+                            builder.setOpenNow(result.getJSONObject("opening_hours").getBoolean("open_now"));
                         }
                     }
 
+                    // Compile the weekly periods into a bitmap for open-at-time checks
+                    if (result.has("opening_hours") && result.getJSONObject("opening_hours").has("periods")) {
+                        JSONArray periods = result.getJSONObject("opening_hours").getJSONArray("periods");
+                        builder.setWeeklyHours(WeeklyOpeningHours.fromPeriods(periods));
+                    }
+                    Restaurant restaurant = builder.setHasDetails(true).build();
+
                     // Update cache
                     restaurantCache.put(placeId, restaurant);
+                    columnStore.put(restaurant);
+                    spatialIndex.put(restaurant);
+                    database.saveRestaurants(Collections.singletonList(restaurant));
 
                     // Return result - no need to wrap in runOnUiThread here
                     // The callback implementation should handle threading
@@ -509,6 +726,10 @@ public class RestaurantManager {
                 } catch (JSONException e) {
                     Log.e(TAG, "Error parsing restaurant details", e);
                     callback.onDetailsFailed("Error parsing data: " + e.getMessage());
+                } catch (IOException e) {
+                    // Reading the body failed, callers waiting on a lookup slot must still hear back
+                    Log.e(TAG, "Error reading restaurant details", e);
+                    callback.onDetailsFailed("Network error: " + e.getMessage());
                 }
             }
         });
@@ -520,22 +741,11 @@ public class RestaurantManager {
     public void searchRestaurantsOpenDuringIftar(LatLng location, Calendar iftarTime,
                                                  int radius, String type, int priceLevel,
                                                  final RestaurantSearchCallback callback) {
-        // First search for nearby restaurants
-        searchNearbyRestaurants(location, radius, type, priceLevel, true, new RestaurantSearchCallback() {
+        // Restaurants that are closed right now may still open for Iftar
+        searchNearbyRestaurants(location, radius, type, priceLevel, false, new RestaurantSearchCallback() {
             @Override
             public void onRestaurantsFound(List<Restaurant> restaurants) {
-                // Filter restaurants that are likely to be open during Iftar
-                List<Restaurant> filteredRestaurants = new ArrayList<>();
-
-                for (Restaurant restaurant : restaurants) {
-                    // For now, just include all open restaurants
-                    // In a real implementation, we would check the opening hours against Iftar time
-                    if (restaurant.isOpenNow()) {
-                        filteredRestaurants.add(restaurant);
-                    }
-                }
-
-                callback.onRestaurantsFound(filteredRestaurants);
+                filterOpenDuringIftar(restaurants, iftarTime, callback);
             }
 
             @Override
@@ -545,6 +755,212 @@ public class RestaurantManager {
         });
     }
 
+    /**
+     * Keeps the restaurants that stay open for the Iftar window.
+     * Weekly hours are looked up for restaurants that don't have them yet;
+     * restaurants without published hours fall back to their open-now status.
+     */
+    public void filterOpenDuringIftar(final List<Restaurant> restaurants, final Calendar iftarTime,
+                                      final RestaurantSearchCallback callback) {
+        filterOpenDuringIftar(restaurants, iftarTime, Integer.MAX_VALUE, callback);
+    }
+
+    /**
+     * Keeps the restaurants that stay open for the Iftar window, sending at most
+     * maxLookups Place Details requests. Restaurants past the limit whose hours are not
+     * known locally fall back to their open-now status.
+     */
+    public void filterOpenDuringIftar(final List<Restaurant> restaurants, final Calendar iftarTime,
+                                      int maxLookups, final RestaurantSearchCallback callback) {
+        loadWeeklyHours(restaurants, maxLookups, withHours -> {
+            List<Restaurant> filteredRestaurants = new ArrayList<>();
+
+            for (Restaurant restaurant : withHours) {
+                if (isOpenDuringIftar(restaurant, iftarTime)) {
+                    filteredRestaurants.add(restaurant);
+                }
+            }
+
+            callback.onRestaurantsFound(filteredRestaurants);
+        });
+    }
+
+    /**
+     * Checks if a restaurant is open for the whole Iftar window
+     */
+    public static boolean isOpenDuringIftar(Restaurant restaurant, Calendar iftarTime) {
+        WeeklyOpeningHours hours = restaurant.getWeeklyHours();
+        if (hours == null) {
+            return restaurant.isOpenNow();
+        }
+        return hours.isOpenThroughout(iftarTime, IFTAR_WINDOW_MINUTES);
+    }
+
+    /**
+     * Interface for receiving restaurants once their weekly hours are loaded
+     */
+    private interface WeeklyHoursCallback {
+        void onWeeklyHoursLoaded(List<Restaurant> restaurants);
+    }
+
+    /**
+     * Loads details for restaurants whose weekly hours are unknown. The callback receives
+     * the same list in the same order, with loaded restaurants replaced by their detailed copy.
+     *
+     * Details come from memory, then from the on-device store, and only the rest from
+     * Place Details, at most MAX_PARALLEL_HOURS_REQUESTS at a time across all callers.
+     * Fetched details are stored, so later searches do not pay for them again. At most
+     * maxLookups restaurants are fetched, the others keep their plain copy.
+     */
+    private void loadWeeklyHours(List<Restaurant> restaurants, final int maxLookups,
+                                 final WeeklyHoursCallback callback) {
+        final Restaurant[] result = restaurants.toArray(new Restaurant[0]);
+        final List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i].hasDetails()) continue;
+
+            // Search results are plain copies, the cache may hold details fetched earlier
+            Restaurant cached = restaurantCache.get(result[i].getId());
+            if (cached != null && cached.hasDetails()) {
+                result[i] = cached.withDistance(result[i].getDistance());
+            } else {
+                missing.add(i);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            callback.onWeeklyHoursLoaded(Arrays.asList(result));
+            return;
+        }
+
+        database.execute(() -> {
+            List<String> placeIds = new ArrayList<>(missing.size());
+            for (int index : missing) {
+                placeIds.add(result[index].getId());
+            }
+            Map<String, Restaurant> stored = database.loadRestaurants(placeIds);
+
+            List<Integer> toFetch = new ArrayList<>();
+            List<Restaurant> loaded = new ArrayList<>();
+            for (int index : missing) {
+                Restaurant restaurant = stored.get(result[index].getId());
+                if (restaurant != null && restaurant.hasDetails()) {
+                    result[index] = restaurant.withDistance(result[index].getDistance());
+                    loaded.add(restaurant);
+                } else {
+                    toFetch.add(index);
+                }
+            }
+            for (Restaurant restaurant : loaded) {
+                restaurantCache.put(restaurant.getId(), restaurant);
+            }
+            columnStore.putAll(loaded);
+            spatialIndex.putAll(loaded);
+
+            if (toFetch.size() > maxLookups) {
+                Log.d(TAG, "Fetching opening hours for " + maxLookups + " of " + toFetch.size() + " restaurants");
+                toFetch = toFetch.subList(0, Math.max(0, maxLookups));
+            }
+            if (toFetch.isEmpty()) {
+                callback.onWeeklyHoursLoaded(Arrays.asList(result));
+                return;
+            }
+            fetchWeeklyHours(result, toFetch, callback);
+        });
+    }
+
+    /**
+     * Fetches the details of the restaurants at the given indices from Place Details
+     */
+    private void fetchWeeklyHours(final Restaurant[] result, List<Integer> indices,
+                                  final WeeklyHoursCallback callback) {
+        final AtomicInteger remaining = new AtomicInteger(indices.size());
+        for (final int index : indices) {
+            final Restaurant restaurant = result[index];
+            enqueueHoursRequest(restaurant.getId(), new RestaurantDetailsCallback() {
+                @Override
+                public void onRestaurantDetailsLoaded(Restaurant loaded) {
+                    // Keep the distance measured by the search
+                    synchronized (result) {
+                        result[index] = loaded.withDistance(restaurant.getDistance());
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+
+                @Override
+                public void onDetailsFailed(String errorMessage) {
+                    Log.w(TAG, "No opening hours for " + restaurant.getName() + ": " + errorMessage);
+                    if (remaining.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+
+                private void finish() {
+                    synchronized (result) {
+                        callback.onWeeklyHoursLoaded(Arrays.asList(result.clone()));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets details through the opening hours queue, so a large batch of restaurants does
+     * not fire all its Place Details requests at once
+     */
+    private void enqueueHoursRequest(String placeId, final RestaurantDetailsCallback callback) {
+        synchronized (hoursQueue) {
+            hoursQueue.add(() -> getRestaurantDetails(placeId, new RestaurantDetailsCallback() {
+                @Override
+                public void onRestaurantDetailsLoaded(Restaurant restaurant) {
+                    onHoursRequestDone();
+                    callback.onRestaurantDetailsLoaded(restaurant);
+                }
+
+                @Override
+                public void onDetailsFailed(String errorMessage) {
+                    onHoursRequestDone();
+                    callback.onDetailsFailed(errorMessage);
+                }
+            }));
+        }
+        startHoursRequests();
+    }
+
+    private void startHoursRequests() {
+        while (true) {
+            Runnable next;
+            synchronized (hoursQueue) {
+                if (hoursRequestsRunning >= MAX_PARALLEL_HOURS_REQUESTS || hoursQueue.isEmpty()) return;
+                hoursRequestsRunning++;
+                next = hoursQueue.poll();
+            }
+            next.run();
+        }
+    }
+
+    private void onHoursRequestDone() {
+        synchronized (hoursQueue) {
+            hoursRequestsRunning--;
+        }
+        startHoursRequests();
+    }
+
+    /**
+     * Builds the URL of a restaurant's photo, or returns null if it has none
+     */
+    public String getPhotoUrl(Restaurant restaurant) {
+        if (restaurant.getPhotoReference() == null) {
+            return null;
+        }
+        return PLACES_API_BASE_URL + PHOTO_ENDPOINT +
+                "maxwidth=" + PHOTO_MAX_WIDTH +
+                "&photoreference=" + restaurant.getPhotoReference() +
+                "&key=" + apiKey;
+    }
+
     /**
      * Formats the price level as a string of dollar signs
      */
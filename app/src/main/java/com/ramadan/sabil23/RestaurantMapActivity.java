@@ -21,6 +21,7 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.ClusterManager;
 import com.ramadan.sabil23.model.Restaurant;
 
 import java.util.ArrayList;
@@ -30,6 +31,7 @@ public class RestaurantMapActivity extends AppCompatActivity implements OnMapRea
     private static final String TAG = "RestaurantMapActivity";
 
     private GoogleMap mMap;
+    private ClusterManager<Restaurant> clusterManager;
     private double latitude;
     private double longitude;
 
@@ -97,6 +99,11 @@ public class RestaurantMapActivity extends AppCompatActivity implements OnMapRea
     public void onMapReady(@NonNull GoogleMap googleMap) {
         mMap = googleMap;
 
+        // Cluster restaurants so zoomed out views stay readable
+        clusterManager = RestaurantClusterRenderer.createClusterManager(this, mMap, null);
+        mMap.setOnCameraIdleListener(clusterManager);
+        mMap.setOnMarkerClickListener(clusterManager);
+
         // Add a marker at the current location
         LatLng currentLocation = new LatLng(latitude, longitude);
         mMap.addMarker(new MarkerOptions()
@@ -117,48 +124,19 @@ public class RestaurantMapActivity extends AppCompatActivity implements OnMapRea
         restaurants.clear();
 
         // Add some dummy restaurants
-        restaurants.add(new Restaurant(
-                "1",
-                "Restaurant A",
-                "123 Main Street",
-                4.5,
-                "",
-                true,
-                "$$$",
-                new LatLng(latitude + 0.005, longitude + 0.002),
-                "place_id_1"
-        ));
-
-        restaurants.add(new Restaurant(
-                "2",
-                "Restaurant B",
-                "456 Oak Avenue",
-                4.2,
-                "",
-                true,
-                "$$",
-                new LatLng(latitude - 0.003, longitude + 0.004),
-                "place_id_2"
-        ));
-
-        restaurants.add(new Restaurant(
-                "3",
-                "Restaurant C",
-                "789 Pine Road",
-                3.8,
-                "",
-                false,
-                "$",
-                new LatLng(latitude + 0.002, longitude - 0.003),
-                "place_id_3"
-        ));
+        restaurants.add(createDummyRestaurant("1", "Restaurant A", "123 Main Street", 4.5f,
+                latitude + 0.005, longitude + 0.002, true, RestaurantManager.PRICE_EXPENSIVE));
+
+        restaurants.add(createDummyRestaurant("2", "Restaurant B", "456 Oak Avenue", 4.2f,
+                latitude - 0.003, longitude + 0.004, true, RestaurantManager.PRICE_MODERATE));
+
+        restaurants.add(createDummyRestaurant("3", "Restaurant C", "789 Pine Road", 3.8f,
+                latitude + 0.002, longitude - 0.003, false, RestaurantManager.PRICE_INEXPENSIVE));
 
         // Add markers for each restaurant
-        for (Restaurant restaurant : restaurants) {
-            mMap.addMarker(new MarkerOptions()
-                    .position(restaurant.getPosition())
-                    .title(restaurant.getName()));
-        }
+        clusterManager.clearItems();
+        clusterManager.addItems(restaurants);
+        clusterManager.cluster();
 
         // Update the adapter
         adapter.notifyDataSetChanged();
@@ -172,10 +150,21 @@ public class RestaurantMapActivity extends AppCompatActivity implements OnMapRea
         }
     }
 
+    private Restaurant createDummyRestaurant(String id, String name, String address, float rating,
+                                             double lat, double lng, boolean isOpen, int priceLevel) {
+        return new Restaurant.Builder(id, name)
+                .setAddress(address)
+                .setRating(rating)
+                .setLocation(lat, lng)
+                .setOpenNow(isOpen)
+                .setPriceLevel(priceLevel)
+                .build();
+    }
+
     private void navigateToRestaurant(Restaurant restaurant) {
         // Open Google Maps for navigation
         Uri gmmIntentUri = Uri.parse("google.navigation:q=" +
-                restaurant.getPosition().latitude + "," + restaurant.getPosition().longitude +
+                restaurant.getLatitude() + "," + restaurant.getLongitude() +
                 "&mode=d");
         Intent mapIntent = new Intent(Intent.ACTION_VIEW, gmmIntentUri);
         mapIntent.setPackage("com.google.android.apps.maps");
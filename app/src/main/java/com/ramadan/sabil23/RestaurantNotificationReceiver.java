@@ -6,6 +6,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.media.RingtoneManager;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -15,11 +18,23 @@ import com.google.android.gms.maps.model.LatLng;
 import com.ramadan.sabil23.model.Restaurant;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class RestaurantNotificationReceiver extends BroadcastReceiver {
     private static final String TAG = "RestaurantNotification";
 
+    // The check must finish well within the ten seconds a receiver gets
+    private static final long FEASIBILITY_DEADLINE_MS = 8000;
+
+    // Restaurants named in the notification
+    private static final int NAMED_RESTAURANTS = 3;
+
+    // Most stored restaurants checked, nearest first
+    private static final int MAX_STORED_CANDIDATES = 200;
+
     @Override
     public void onReceive(Context context, Intent intent) {
         int radiusKm = intent.getIntExtra("radius_km", 1);
@@ -29,14 +44,65 @@ public class RestaurantNotificationReceiver extends BroadcastReceiver {
 
         Log.d(TAG, "Received restaurant notification request");
 
-        // Create dummy restaurant data (in a real app, you would fetch this from an API)
-        List<Restaurant> restaurants = getDummyRestaurants(latitude, longitude);
+        final PendingResult pendingResult = goAsync();
+        final long receivedAt = SystemClock.elapsedRealtime();
+        final RestaurantDatabase database = RestaurantDatabase.getInstance(context);
+
+        // Only restaurants already on the device, the receiver has no time for a search. An
+        // alarm usually starts a fresh process whose index is still empty, so the store is
+        // read on its own thread.
+        database.execute(() -> {
+            List<Restaurant> restaurants = findStoredRestaurants(context, database, latitude, longitude,
+                    radiusKm * 1000);
+            if (restaurants.isEmpty()) {
+                showRestaurantNotification(context, restaurants, false, notificationId, latitude, longitude);
+                pendingResult.finish();
+                return;
+            }
+
+            // Keep only what can be reached before Maghrib, falling back to every nearby
+            // restaurant if the check takes too long
+            final AtomicBoolean done = new AtomicBoolean();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            final Runnable fallback = () -> {
+                if (done.compareAndSet(false, true)) {
+                    Log.w(TAG, "Feasibility check timed out");
+                    showRestaurantNotification(context, restaurants, false, notificationId, latitude, longitude);
+                    pendingResult.finish();
+                }
+            };
+            long elapsed = SystemClock.elapsedRealtime() - receivedAt;
+            handler.postDelayed(fallback, Math.max(0, FEASIBILITY_DEADLINE_MS - elapsed));
+
+            IftarFeasibilityEngine.getInstance(context).evaluate(new LatLng(latitude, longitude), restaurants, null,
+                    result -> {
+                        if (!done.compareAndSet(false, true)) return;
+                        handler.removeCallbacks(fallback);
+                        showRestaurantNotification(context, result.getFeasibleRestaurants(), true,
+                                notificationId, latitude, longitude);
+                        pendingResult.finish();
+                    });
+        });
+    }
 
-        // Show notification with restaurant info
-        showRestaurantNotification(context, restaurants, notificationId, latitude, longitude);
+    /**
+     * Returns the stored restaurants around a point, with the in-memory copies, which may be
+     * newer, replacing stored ones. Runs on the database thread.
+     */
+    private static List<Restaurant> findStoredRestaurants(Context context, RestaurantDatabase database,
+                                                          double latitude, double longitude, double radiusMeters) {
+        Map<String, Restaurant> byId = new LinkedHashMap<>();
+        for (Restaurant restaurant : database.queryRadius(latitude, longitude, radiusMeters, MAX_STORED_CANDIDATES)) {
+            byId.put(restaurant.getId(), restaurant);
+        }
+        for (Restaurant restaurant : RestaurantManager.getInstance(context).getSpatialIndex()
+                .queryRadius(latitude, longitude, radiusMeters)) {
+            byId.put(restaurant.getId(), restaurant);
+        }
+        return new ArrayList<>(byId.values());
     }
 
-    private void showRestaurantNotification(Context context, List<Restaurant> restaurants,
+    private void showRestaurantNotification(Context context, List<Restaurant> restaurants, boolean reachable,
                                             int notificationId, double latitude, double longitude) {
 
         // Create an intent to open the map when notification is tapped
@@ -59,15 +125,31 @@ public class RestaurantNotificationReceiver extends BroadcastReceiver {
 
         // Create notification text
         String title = "Nearby Restaurants for Iftar";
-        String content = restaurants.size() > 0
-                ? restaurants.size() + " restaurants found nearby for Iftar"
-                : "Find restaurants nearby before Maghrib prayer";
+        String content;
+        if (restaurants.isEmpty()) {
+            content = "Find restaurants nearby before Maghrib prayer";
+        } else if (reachable) {
+            content = restaurants.size() + " restaurants you can reach before Maghrib";
+        } else {
+            content = restaurants.size() + " restaurants found nearby for Iftar";
+        }
+
+        // Name the soonest ones to reach
+        StringBuilder names = new StringBuilder();
+        if (reachable) {
+            for (int i = 0; i < restaurants.size() && i < NAMED_RESTAURANTS; i++) {
+                if (i > 0) names.append(", ");
+                names.append(restaurants.get(i).getName());
+            }
+        }
 
         // Build the notification
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, AdhanNotificationManager.CHANNEL_RESTAURANT)
                 .setSmallIcon(R.drawable.ic_notification)
                 .setContentTitle(title)
                 .setContentText(content)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(
+                        names.length() > 0 ? content + "\n" + names : content))
                 .setPriority(NotificationCompat.PRIORITY_DEFAULT)
                 .setSound(soundUri)
                 .setContentIntent(pendingIntent)
@@ -84,31 +166,4 @@ public class RestaurantNotificationReceiver extends BroadcastReceiver {
             Log.e(TAG, "No permission to show notification", e);
         }
     }
-
-    // Create dummy restaurant data for demonstration
-    private List<Restaurant> getDummyRestaurants(double latitude, double longitude) {
-        List<Restaurant> restaurants = new ArrayList<>();
-
-        // Add some dummy restaurants
-        restaurants.add(createDummyRestaurant(
-                "1", "Restaurant A", "123 Main Street", 4.5,
-                latitude + 0.005, longitude + 0.002, true));
-
-        restaurants.add(createDummyRestaurant(
-                "2", "Restaurant B", "456 Oak Avenue", 4.2,
-                latitude - 0.003, longitude + 0.004, true));
-
-        restaurants.add(createDummyRestaurant(
-                "3", "Restaurant C", "789 Pine Road", 3.8,
-                latitude + 0.002, longitude - 0.003, true));
-
-        return restaurants;
-    }
-
-    private Restaurant createDummyRestaurant(String id, String name, String vicinity,
-                                             double rating, double lat, double lng, boolean isOpen) {
-
-        LatLng position = new LatLng(lat, lng);
-        return new Restaurant(id, name, vicinity, rating, "", isOpen, "$$$", position, id);
-    }
-}
\ No newline at end of file
+}
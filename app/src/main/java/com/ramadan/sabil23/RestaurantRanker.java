@@ -0,0 +1,305 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ranks restaurants by distance, rating, price or a weighted composite score.
+ *
+ * Only the best K restaurants are kept, in a bounded min-heap over primitive scores,
+ * so ranking n candidates costs O(n log K) instead of a full sort. Ranking runs on a
+ * background thread and sessions re-rank incrementally as more results stream in.
+ */
+public class RestaurantRanker {
+    // Score given to restaurants without a price level when sorting by price
+    private static final float UNKNOWN_PRICE_SCORE = -(RestaurantManager.PRICE_VERY_EXPENSIVE + 1);
+
+    // Singleton instance
+    private static RestaurantRanker instance;
+
+    // Ranking thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized RestaurantRanker getInstance() {
+        if (instance == null) {
+            instance = new RestaurantRanker();
+        }
+        return instance;
+    }
+
+    private RestaurantRanker() {
+    }
+
+    /**
+     * Weights for the composite score, each term is normalised to 0..1
+     */
+    public static class Weights {
+        private float distance = 0.35f;
+        private float rating = 0.25f;
+        private float price = 0.1f;
+        private float halal = 0.15f;
+        private float openAtIftar = 0.15f;
+        private double distanceDecayMeters = 3000;
+
+        public float getDistance() { return distance; }
+        public void setDistance(float distance) { this.distance = distance; }
+        public float getRating() { return rating; }
+        public void setRating(float rating) { this.rating = rating; }
+        public float getPrice() { return price; }
+        public void setPrice(float price) { this.price = price; }
+        public float getHalal() { return halal; }
+        public void setHalal(float halal) { this.halal = halal; }
+        public float getOpenAtIftar() { return openAtIftar; }
+        public void setOpenAtIftar(float openAtIftar) { this.openAtIftar = openAtIftar; }
+        public double getDistanceDecayMeters() { return distanceDecayMeters; }
+        public void setDistanceDecayMeters(double distanceDecayMeters) { this.distanceDecayMeters = distanceDecayMeters; }
+    }
+
+    /**
+     * Interface for ranking callbacks, called on the ranking thread
+     */
+    public interface RankingCallback {
+        void onRanked(List<Restaurant> topRestaurants);
+    }
+
+    /**
+     * Ranks restaurants in the background and returns the best k, best first
+     */
+    public void rankAsync(final List<Restaurant> restaurants, final int k,
+                          final int sortKey, final Weights weights, final Calendar iftarTime,
+                          final RankingCallback callback) {
+        final List<Restaurant> snapshot = new ArrayList<>(restaurants);
+        executor.execute(() -> callback.onRanked(topK(snapshot, k, sortKey, weights, iftarTime)));
+    }
+
+    /**
+     * Starts an incremental ranking. Each batch offered to the session is merged into the
+     * running top k and the callback receives the updated ranking.
+     */
+    public Session newSession(int k, int sortKey, Weights weights, Calendar iftarTime,
+                              RankingCallback callback) {
+        return new Session(k, sortKey, weights, iftarTime, callback);
+    }
+
+    /**
+     * An incremental ranking over batches of restaurants
+     */
+    public class Session {
+        private final int sortKey;
+        private final Weights weights;
+        private final Calendar iftarTime;
+        private final RankingCallback callback;
+        private final TopKHeap heap;
+
+        // Latest copy of every restaurant offered, by place ID, only touched on the ranking thread
+        private final Map<String, Restaurant> latest = new HashMap<>();
+        private volatile boolean cancelled;
+
+        private Session(int k, int sortKey, Weights weights, Calendar iftarTime, RankingCallback callback) {
+            this.sortKey = sortKey;
+            this.weights = weights != null ? weights : new Weights();
+            this.iftarTime = iftarTime;
+            this.callback = callback;
+            this.heap = new TopKHeap(k);
+        }
+
+        /**
+         * Adds a batch of restaurants. A restaurant offered again replaces its earlier copy,
+         * which may have scored differently, so the ranking is then rebuilt from the latest
+         * copies.
+         */
+        public void offer(List<Restaurant> restaurants) {
+            final List<Restaurant> batch = new ArrayList<>(restaurants);
+            executor.execute(() -> {
+                if (cancelled) return;
+
+                boolean replaced = false;
+                for (Restaurant restaurant : batch) {
+                    if (latest.put(restaurant.getId(), restaurant) != null) {
+                        replaced = true;
+                    } else if (!replaced) {
+                        heap.offer(score(restaurant, sortKey, weights, iftarTime), restaurant);
+                    }
+                }
+                if (replaced) {
+                    heap.clear();
+                    for (Restaurant restaurant : latest.values()) {
+                        heap.offer(score(restaurant, sortKey, weights, iftarTime), restaurant);
+                    }
+                }
+
+                if (!cancelled) {
+                    callback.onRanked(heap.toSortedList());
+                }
+            });
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Returns the best k restaurants, best first
+     */
+    public static List<Restaurant> topK(List<Restaurant> restaurants, int k, int sortKey,
+                                        Weights weights, Calendar iftarTime) {
+        Weights w = weights != null ? weights : new Weights();
+        TopKHeap heap = new TopKHeap(k);
+        for (int i = 0, n = restaurants.size(); i < n; i++) {
+            Restaurant restaurant = restaurants.get(i);
+            heap.offer(score(restaurant, sortKey, w, iftarTime), restaurant);
+        }
+        return heap.toSortedList();
+    }
+
+    /**
+     * Scores a restaurant for a sort key, higher is better
+     */
+    static float score(Restaurant restaurant, int sortKey, Weights weights,
+                       Calendar iftarTime) {
+        switch (sortKey) {
+            case RestaurantManager.SORT_DISTANCE:
+                return (float) -restaurant.getDistance();
+            case RestaurantManager.SORT_RATING:
+                return restaurant.getRating();
+            case RestaurantManager.SORT_PRICE:
+                return priceScore(restaurant.getPriceLevel());
+            case RestaurantManager.SORT_COMPOSITE:
+            default:
+                boolean open = iftarTime != null
+                        ? RestaurantManager.isOpenDuringIftar(restaurant, iftarTime)
+                        : restaurant.isOpenNow();
+                return compositeScore(restaurant.getDistance(), restaurant.getRating(),
+                        restaurant.getPriceLevel(), restaurant.getHalalScore(), open, weights);
+        }
+    }
+
+    /**
+     * Score for sorting by price, cheapest first and unknown prices last
+     */
+    static float priceScore(int priceLevel) {
+        return priceLevel > 0 ? -priceLevel : UNKNOWN_PRICE_SCORE;
+    }
+
+    /**
+     * Weighted sum of distance, rating, price, halal confidence and open-at-Iftar
+     */
+    static float compositeScore(double distance, float rating, int priceLevel, float halalScore,
+                                boolean open, Weights weights) {
+        double closeness = Math.exp(-distance / weights.getDistanceDecayMeters());
+        float price = priceLevel > 0
+                ? 1f - (priceLevel - 1) / 3f
+                : 0.5f;
+
+        return (float) (weights.getDistance() * closeness)
+                + weights.getRating() * (rating / 5f)
+                + weights.getPrice() * price
+                + weights.getHalal() * halalScore
+                + weights.getOpenAtIftar() * (open ? 1f : 0f);
+    }
+
+    /**
+     * Bounded min-heap keeping the k highest scores. The root is the weakest kept entry,
+     * so a candidate only costs a comparison unless it beats it.
+     */
+    static class TopKHeap {
+        private final int capacity;
+        private final float[] scores;
+        private final Restaurant[] items;
+        private int size;
+
+        TopKHeap(int capacity) {
+            this.capacity = Math.max(0, capacity);
+            this.scores = new float[this.capacity];
+            this.items = new Restaurant[this.capacity];
+        }
+
+        void offer(float score, Restaurant item) {
+            if (size < capacity) {
+                scores[size] = score;
+                items[size] = item;
+                siftUp(size++);
+            } else if (capacity > 0 && score > scores[0]) {
+                scores[0] = score;
+                items[0] = item;
+                siftDown(0);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+
+        /**
+         * Returns the kept entries best first, leaving the heap unchanged
+         */
+        List<Restaurant> toSortedList() {
+            float[] sortedScores = new float[size];
+            Restaurant[] sortedItems = new Restaurant[size];
+            System.arraycopy(scores, 0, sortedScores, 0, size);
+            System.arraycopy(items, 0, sortedItems, 0, size);
+
+            // Heap sort in place: repeatedly move the minimum to the end
+            for (int end = size - 1; end > 0; end--) {
+                swap(sortedScores, sortedItems, 0, end);
+                siftDown(sortedScores, sortedItems, 0, end);
+            }
+
+            List<Restaurant> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(sortedItems[i]);
+            }
+            return result;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[i] >= scores[parent]) break;
+                swap(scores, items, i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            siftDown(scores, items, i, size);
+        }
+
+        private static void siftDown(float[] scores, Restaurant[] items, int i, int size) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) break;
+                int smallest = left;
+                int right = left + 1;
+                if (right < size && scores[right] < scores[left]) {
+                    smallest = right;
+                }
+                if (scores[i] <= scores[smallest]) break;
+                swap(scores, items, i, smallest);
+                i = smallest;
+            }
+        }
+
+        private static void swap(float[] scores, Restaurant[] items, int a, int b) {
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+            Restaurant item = items[a];
+            items[a] = items[b];
+            items[b] = item;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.location.GeoHash;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Spatial index over every restaurant seen so far, bucketed into a geohash grid.
+ *
+ * Cells are about 600 m tall and keep their coordinates in primitive arrays, so radius,
+ * nearest-neighbour and viewport queries only look at the few cells around the query
+ * instead of every restaurant. The index also remembers which circles have been searched
+ * on the network recently, so callers can answer from the index when an area is covered.
+ */
+public class RestaurantSpatialIndex {
+    private static final String TAG = "RestaurantSpatialIndex";
+
+    // 15 bits per axis: cells of 180/2^15 degrees of latitude by 360/2^15 of longitude
+    private static final int BITS_PER_AXIS = 15;
+    private static final long AXIS_CELLS = 1L << BITS_PER_AXIS;
+    private static final double CELL_HEIGHT_DEGREES = GeoHash.cellHeightDegrees(BITS_PER_AXIS);
+    private static final double CELL_WIDTH_DEGREES = GeoHash.cellWidthDegrees(BITS_PER_AXIS);
+    private static final double CELL_HEIGHT_METERS = CELL_HEIGHT_DEGREES * GeoHash.METERS_PER_DEGREE;
+
+    // Network coverage
+    public static final long COVERAGE_TTL_MS = 30 * 60 * 1000; // 30 minutes
+    // Panning adds one entry per searched map cell
+    private static final int MAX_COVERAGE_ENTRIES = 256;
+
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<String, Long> cellById = new HashMap<>();
+    private final List<Coverage> coverage = new ArrayList<>();
+    private int size;
+
+    /**
+     * Adds a restaurant or replaces the stored copy with the same place ID
+     */
+    public synchronized void put(Restaurant restaurant) {
+        long key = GeoHash.encode(restaurant.getLatitude(), restaurant.getLongitude(), 2 * BITS_PER_AXIS);
+
+        Long oldKey = cellById.put(restaurant.getId(), key);
+        if (oldKey != null) {
+            Cell oldCell = cells.get(oldKey);
+            if (oldCell != null && oldCell.remove(restaurant.getId())) {
+                size--;
+                if (oldCell.size == 0) cells.remove(oldKey);
+            }
+        }
+
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key, cell);
+        }
+        cell.add(restaurant);
+        size++;
+    }
+
+    public synchronized void putAll(List<Restaurant> restaurants) {
+        for (int i = 0, n = restaurants.size(); i < n; i++) {
+            put(restaurants.get(i));
+        }
+    }
+
+    /**
+     * Removes the restaurant with a place ID, returns false if it was not indexed
+     */
+    public synchronized boolean remove(String placeId) {
+        Long key = cellById.remove(placeId);
+        if (key == null) return false;
+
+        Cell cell = cells.get(key);
+        if (cell == null || !cell.remove(placeId)) return false;
+        size--;
+        if (cell.size == 0) cells.remove(key);
+        return true;
+    }
+
+    /**
+     * Removes every restaurant, network coverage is kept
+     */
+    public synchronized void clear() {
+        cells.clear();
+        cellById.clear();
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the restaurants within radiusMeters, nearest first, with their distance set
+     */
+    public synchronized List<Restaurant> queryRadius(double latitude, double longitude, double radiusMeters) {
+        double dLat = radiusMeters / GeoHash.METERS_PER_DEGREE;
+        double dLng = radiusMeters / (GeoHash.METERS_PER_DEGREE * cosLatitude(Math.abs(latitude) + dLat));
+
+        List<Hit> hits = new ArrayList<>();
+        List<Cell> candidates = cellsInBox(latitude - dLat, longitude - dLng, latitude + dLat, longitude + dLng);
+        for (Cell cell : candidates) {
+            for (int i = 0; i < cell.size; i++) {
+                double distance = GeoHash.distanceMeters(latitude, longitude, cell.lats[i], cell.lngs[i]);
+                if (distance <= radiusMeters) {
+                    hits.add(new Hit(distance, cell.items[i]));
+                }
+            }
+        }
+
+        Collections.sort(hits);
+        return toRestaurants(hits);
+    }
+
+    /**
+     * Returns the k nearest restaurants within maxRadiusMeters, nearest first, with their
+     * distance set. Rings of cells are visited outwards until no closer restaurant can remain.
+     */
+    public synchronized List<Restaurant> queryNearest(double latitude, double longitude, int k,
+                                                      double maxRadiusMeters) {
+        if (k <= 0 || size == 0) return new ArrayList<>();
+
+        // Max-heap of the k best so far, the root is the farthest kept
+        PriorityQueue<Hit> best = new PriorityQueue<>(k, Collections.reverseOrder());
+        long centerLat = GeoHash.latitudeIndex(latitude, BITS_PER_AXIS);
+        long centerLng = GeoHash.longitudeIndex(longitude, BITS_PER_AXIS);
+        int visited = 0;
+
+        for (int ring = 0; ; ring++) {
+            // Anything in this ring or beyond is at least (ring - 1) full cells away
+            double ringLatitude = Math.min(90, Math.abs(latitude) + ring * CELL_HEIGHT_DEGREES);
+            double cellMeters = Math.min(CELL_HEIGHT_METERS,
+                    CELL_WIDTH_DEGREES * GeoHash.METERS_PER_DEGREE * cosLatitude(ringLatitude));
+            double ringMinDistance = Math.max(0, ring - 1) * cellMeters;
+            if (ringMinDistance > maxRadiusMeters) break;
+            if (best.size() == k && ringMinDistance > best.peek().distance) break;
+            if (visited == size || ring > AXIS_CELLS / 2) break;
+
+            for (long dy = -ring; dy <= ring; dy++) {
+                long latIndex = centerLat + dy;
+                if (latIndex < 0 || latIndex >= AXIS_CELLS) continue;
+
+                // Inner rows only contribute the two edge cells of the ring
+                long step = (Math.abs(dy) == ring) ? 1 : Math.max(1, 2L * ring);
+                for (long dx = -ring; dx <= ring; dx += step) {
+                    long lngIndex = Math.floorMod(centerLng + dx, AXIS_CELLS);
+                    Cell cell = cells.get(GeoHash.cellOf(latIndex, lngIndex, BITS_PER_AXIS));
+                    if (cell == null) continue;
+
+                    visited += cell.size;
+                    for (int i = 0; i < cell.size; i++) {
+                        double distance = GeoHash.distanceMeters(latitude, longitude, cell.lats[i], cell.lngs[i]);
+                        if (distance > maxRadiusMeters) continue;
+                        if (best.size() < k) {
+                            best.add(new Hit(distance, cell.items[i]));
+                        } else if (distance < best.peek().distance) {
+                            best.poll();
+                            best.add(new Hit(distance, cell.items[i]));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        Collections.sort(hits);
+        return toRestaurants(hits);
+    }
+
+    /**
+     * Returns the restaurants inside a bounding box such as the map viewport.
+     * A box with west greater than east crosses the antimeridian.
+     */
+    public synchronized List<Restaurant> queryBounds(double south, double west, double north, double east) {
+        List<Restaurant> result = new ArrayList<>();
+        boolean wraps = west > east;
+
+        for (Cell cell : cellsInBox(south, west, north, wraps ? east + 360 : east)) {
+            for (int i = 0; i < cell.size; i++) {
+                double lat = cell.lats[i];
+                double lng = cell.lngs[i];
+                boolean inLng = wraps ? (lng >= west || lng <= east) : (lng >= west && lng <= east);
+                if (lat >= south && lat <= north && inLng) {
+                    result.add(cell.items[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the network was searched around a point
+     */
+    public void markCovered(double latitude, double longitude, double radiusMeters) {
+        markCovered(latitude, longitude, radiusMeters, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that the network was searched around a point at the given time, used
+     * when restoring coverage saved by an earlier process
+     */
+    public synchronized void markCovered(double latitude, double longitude, double radiusMeters, long time) {
+        long now = System.currentTimeMillis();
+        Coverage added = new Coverage(latitude, longitude, radiusMeters, time);
+        if (added.isExpired(now)) return;
+
+        // Drop expired entries and the older ones the new circle contains
+        Iterator<Coverage> iterator = coverage.iterator();
+        while (iterator.hasNext()) {
+            Coverage entry = iterator.next();
+            if (entry.isExpired(now) || (entry.time <= time
+                    && added.contains(entry.latitude, entry.longitude, entry.radiusMeters))) {
+                iterator.remove();
+            }
+        }
+
+        if (coverage.size() >= MAX_COVERAGE_ENTRIES) {
+            coverage.remove(0);
+        }
+        coverage.add(added);
+    }
+
+    /**
+     * Checks if a circle lies inside an area searched on the network within COVERAGE_TTL_MS
+     */
+    public synchronized boolean isCovered(double latitude, double longitude, double radiusMeters) {
+        long now = System.currentTimeMillis();
+        for (int i = coverage.size() - 1; i >= 0; i--) {
+            Coverage entry = coverage.get(i);
+            if (!entry.isExpired(now) && entry.contains(latitude, longitude, radiusMeters)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets network coverage so the next lookups go to the network again
+     */
+    public synchronized void clearCoverage() {
+        coverage.clear();
+    }
+
+    /**
+     * Collects the non-empty cells overlapping a box. Longitudes past 180 wrap around.
+     */
+    private List<Cell> cellsInBox(double south, double west, double north, double east) {
+        List<Cell> result = new ArrayList<>();
+        long fromLat = GeoHash.latitudeIndex(Math.max(-90, south), BITS_PER_AXIS);
+        long toLat = GeoHash.latitudeIndex(Math.min(90, north), BITS_PER_AXIS);
+        long fromLng = (long) Math.floor((west + 180) / CELL_WIDTH_DEGREES);
+        long toLng = (long) Math.floor((east + 180) / CELL_WIDTH_DEGREES);
+        long columns = Math.min(AXIS_CELLS, toLng - fromLng + 1);
+
+        // For large boxes it is cheaper to walk the occupied cells than the grid
+        if ((toLat - fromLat + 1) * columns > cells.size()) {
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                Cell cell = entry.getValue();
+                if (cell.overlaps(south, west, north, east)) {
+                    result.add(cell);
+                }
+            }
+            return result;
+        }
+
+        for (long lat = fromLat; lat <= toLat; lat++) {
+            for (long i = 0; i < columns; i++) {
+                long lng = Math.floorMod(fromLng + i, AXIS_CELLS);
+                Cell cell = cells.get(GeoHash.cellOf(lat, lng, BITS_PER_AXIS));
+                if (cell != null) {
+                    result.add(cell);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double cosLatitude(double latitude) {
+        return Math.max(0.01, Math.cos(Math.toRadians(Math.min(90, latitude))));
+    }
+
+    private static List<Restaurant> toRestaurants(List<Hit> hits) {
+        List<Restaurant> restaurants = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            restaurants.add(hit.restaurant.withDistance(hit.distance));
+        }
+        return restaurants;
+    }
+
+    /**
+     * Restaurants of one grid cell, coordinates kept in primitive arrays
+     */
+    private static class Cell {
+        int size;
+        double[] lats = new double[4];
+        double[] lngs = new double[4];
+        Restaurant[] items = new Restaurant[4];
+
+        void add(Restaurant restaurant) {
+            if (size == items.length) {
+                lats = Arrays.copyOf(lats, size * 2);
+                lngs = Arrays.copyOf(lngs, size * 2);
+                items = Arrays.copyOf(items, size * 2);
+            }
+            lats[size] = restaurant.getLatitude();
+            lngs[size] = restaurant.getLongitude();
+            items[size] = restaurant;
+            size++;
+        }
+
+        boolean remove(String placeId) {
+            for (int i = 0; i < size; i++) {
+                if (items[i].getId().equals(placeId)) {
+                    // Move the last entry into the gap
+                    size--;
+                    lats[i] = lats[size];
+                    lngs[i] = lngs[size];
+                    items[i] = items[size];
+                    items[size] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks the cell's entries against a box whose east edge may exceed 180
+         */
+        boolean overlaps(double south, double west, double north, double east) {
+            for (int i = 0; i < size; i++) {
+                double lng = lngs[i] < west ? lngs[i] + 360 : lngs[i];
+                if (lats[i] >= south && lats[i] <= north && lng <= east) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A query result with its distance
+     */
+    private static class Hit implements Comparable<Hit> {
+        final double distance;
+        final Restaurant restaurant;
+
+        Hit(double distance, Restaurant restaurant) {
+            this.distance = distance;
+            this.restaurant = restaurant;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    /**
+     * A circle searched on the network
+     */
+    private static class Coverage {
+        final double latitude;
+        final double longitude;
+        final double radiusMeters;
+        final long time;
+
+        Coverage(double latitude, double longitude, double radiusMeters, long time) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radiusMeters = radiusMeters;
+            this.time = time;
+        }
+
+        boolean isExpired(long now) {
+            return now - time > COVERAGE_TTL_MS;
+        }
+
+        boolean contains(double lat, double lng, double radius) {
+            return GeoHash.distanceMeters(latitude, longitude, lat, lng) + radius <= radiusMeters;
+        }
+    }
+}
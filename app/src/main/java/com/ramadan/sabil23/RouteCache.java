@@ -0,0 +1,220 @@
+package com.ramadan.sabil23;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.ramadan.sabil23.location.GeoHash;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Directions results kept for a while so the same trip is not requested twice.
+ *
+ * Origin and destination are quantized to geohash cells of KEY_PRECISION characters,
+ * about 150 m, so a request from a few meters further along still hits. The key also
+ * holds the mode, alternatives, departure time, traffic model and transit preference.
+ * Traffic-aware driving routes expire after TRAFFIC_TTL_MS, other routes after
+ * ROUTE_TTL_MS. The least recently used entry goes when the cache is full.
+ *
+ * Travel times from the distance matrix are kept per origin and destination pair in the
+ * same way, as plain seconds.
+ *
+ * All methods are synchronized, lookups come from any thread.
+ */
+public class RouteCache {
+    private static final String TAG = "RouteCache";
+
+    // Geohash length of origin and destination, about 150 m by 150 m
+    private static final int KEY_PRECISION = 7;
+
+    private static final int MAX_ENTRIES = 64;
+    private static final int MAX_TRAVEL_TIMES = 512;
+    private static final long ROUTE_TTL_MS = 15 * 60 * 1000; // 15 minutes
+    private static final long TRAFFIC_TTL_MS = 2 * 60 * 1000; // 2 minutes
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictionCount++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Travel time pairs, seconds and expiry packed into one entry
+    private final Map<String, long[]> travelTimes = new LinkedHashMap<String, long[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            if (size() > MAX_TRAVEL_TIMES) {
+                evictionCount++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long hitCount;
+    private long missCount;
+    private long expiredCount;
+    private long evictionCount;
+
+    /**
+     * Builds the cache key of a directions request
+     */
+    public static String keyOf(LatLng origin, LatLng destination, String mode, boolean alternatives,
+                               String departureTime, String trafficModel, String transitPreference) {
+        return GeoHash.encodeString(origin.latitude, origin.longitude, KEY_PRECISION)
+                + ">" + GeoHash.encodeString(destination.latitude, destination.longitude, KEY_PRECISION)
+                + "|" + mode
+                + "|" + (alternatives ? "alt" : "one")
+                + "|" + departureTime
+                + "|" + trafficModel
+                + "|" + transitPreference;
+    }
+
+    /**
+     * Builds the cache key of one travel time pair
+     */
+    public static String pairKeyOf(LatLng origin, LatLng destination, String mode, boolean trafficAware) {
+        return GeoHash.encodeString(origin.latitude, origin.longitude, KEY_PRECISION)
+                + ">" + GeoHash.encodeString(destination.latitude, destination.longitude, KEY_PRECISION)
+                + "|" + mode
+                + (trafficAware ? "|traffic" : "");
+    }
+
+    /**
+     * Whether a request uses live traffic, the results of which go stale quickly
+     */
+    public static boolean isTrafficAware(String mode, String departureTime) {
+        return NavigationManager.MODE_DRIVING.equals(mode) && departureTime != null;
+    }
+
+    /**
+     * Returns the cached routes of a key, or null if there are none or they expired
+     */
+    public synchronized List<NavigationManager.Route> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.expiresAt) {
+            entries.remove(key);
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.routes;
+    }
+
+    /**
+     * Stores the routes of a request
+     */
+    public synchronized void put(String key, List<NavigationManager.Route> routes, boolean trafficAware) {
+        long now = System.currentTimeMillis();
+        entries.put(key, new Entry(routes, now + (trafficAware ? TRAFFIC_TTL_MS : ROUTE_TTL_MS)));
+
+        // Drop what expired meanwhile so it does not hold up the space
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now > iterator.next().expiresAt) {
+                iterator.remove();
+                expiredCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns the cached travel time of a pair in seconds, or -1 if there is none or it
+     * expired
+     */
+    public synchronized int getTravelTime(String pairKey) {
+        long[] entry = travelTimes.get(pairKey);
+        if (entry == null) {
+            missCount++;
+            return -1;
+        }
+        if (System.currentTimeMillis() > entry[1]) {
+            travelTimes.remove(pairKey);
+            expiredCount++;
+            missCount++;
+            return -1;
+        }
+        hitCount++;
+        return (int) entry[0];
+    }
+
+    /**
+     * Stores the travel time of a pair in seconds
+     */
+    public synchronized void putTravelTime(String pairKey, int seconds, boolean trafficAware) {
+        long expiresAt = System.currentTimeMillis() + (trafficAware ? TRAFFIC_TTL_MS : ROUTE_TTL_MS);
+        travelTimes.put(pairKey, new long[]{seconds, expiresAt});
+    }
+
+    /**
+     * Removes every entry, the counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        travelTimes.clear();
+    }
+
+    /**
+     * Returns a snapshot of the cache counters
+     */
+    public synchronized Stats getStats() {
+        return new Stats(entries.size() + travelTimes.size(), hitCount, missCount, expiredCount, evictionCount);
+    }
+
+    private static class Entry {
+        final List<NavigationManager.Route> routes;
+        final long expiresAt;
+
+        Entry(List<NavigationManager.Route> routes, long expiresAt) {
+            this.routes = routes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Counters of a route cache
+     */
+    public static class Stats {
+        private final int size;
+        private final long hitCount;
+        private final long missCount;
+        private final long expiredCount;
+        private final long evictionCount;
+
+        Stats(int size, long hitCount, long missCount, long expiredCount, long evictionCount) {
+            this.size = size;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.expiredCount = expiredCount;
+            this.evictionCount = evictionCount;
+        }
+
+        public int getSize() { return size; }
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        public long getExpiredCount() { return expiredCount; }
+        public long getEvictionCount() { return evictionCount; }
+
+        public float getHitRate() {
+            long requests = hitCount + missCount;
+            return requests > 0 ? (float) hitCount / requests : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "size=%d hits=%d misses=%d hitRate=%.1f%% expired=%d evicted=%d",
+                    size, hitCount, missCount, getHitRate() * 100, expiredCount, evictionCount);
+        }
+    }
+}
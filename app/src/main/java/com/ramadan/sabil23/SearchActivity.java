@@ -108,6 +108,18 @@ public class SearchActivity extends AppCompatActivity {
         showRecentSearches();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        FrameMetricsMonitor.getInstance(this).attach(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameMetricsMonitor.getInstance(this).detach(this);
+    }
+
     /**
      * Sets up click listeners for UI elements
      */
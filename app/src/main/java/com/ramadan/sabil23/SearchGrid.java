@@ -0,0 +1,118 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.location.GeoHash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Grid of map cells searched one by one, so panning the map only searches the area it
+ * newly exposes.
+ *
+ * Cells are geohash cells of BITS_PER_AXIS bits per axis, about 1.2 km tall, each
+ * searched with the circle through its corners. Whether a cell still needs a search is
+ * up to the network coverage of the RestaurantSpatialIndex, which only network answers
+ * extend and which expires after RestaurantSpatialIndex.COVERAGE_TTL_MS.
+ */
+public final class SearchGrid {
+    private static final String TAG = "SearchGrid";
+
+    // About 1.2 km by 2.4 km at the equator, a search circle covers a cell with little waste
+    private static final int BITS_PER_AXIS = 14;
+    private static final long AXIS_CELLS = 1L << BITS_PER_AXIS;
+
+    // Viewports spanning more cells are too far out to search cell by cell
+    private static final int MAX_VIEWPORT_CELLS = 64;
+
+    private SearchGrid() {
+    }
+
+    /**
+     * One grid cell with the circle a search has to cover for it
+     */
+    public static class Cell {
+        private final double latitude;
+        private final double longitude;
+        private final int radius;
+
+        Cell(double latitude, double longitude, int radius) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+        }
+
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        public int getRadius() { return radius; }
+    }
+
+    /**
+     * Returns the cells of an area whose circle the index does not cover, nearest to the
+     * center of the area first and at most max of them. Returns no cells when the area
+     * spans more than MAX_VIEWPORT_CELLS.
+     */
+    public static List<Cell> uncoveredCells(RestaurantSpatialIndex index, double south, double west,
+                                            double north, double east, int max) {
+        long firstRow = GeoHash.latitudeIndex(south, BITS_PER_AXIS);
+        long lastRow = GeoHash.latitudeIndex(north, BITS_PER_AXIS);
+        long firstColumn = GeoHash.longitudeIndex(west, BITS_PER_AXIS);
+        long lastColumn = GeoHash.longitudeIndex(east, BITS_PER_AXIS);
+
+        // Areas across the antimeridian wrap around to the first column
+        long columns = west > east
+                ? AXIS_CELLS - firstColumn + lastColumn + 1
+                : lastColumn - firstColumn + 1;
+        long rows = lastRow - firstRow + 1;
+        if (rows * columns > MAX_VIEWPORT_CELLS) {
+            return Collections.emptyList();
+        }
+
+        double centerLat = (south + north) / 2;
+        double centerLng = west > east ? wrap((west + east + 360) / 2) : (west + east) / 2;
+
+        List<Cell> cells = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        for (long row = firstRow; row <= lastRow; row++) {
+            for (long i = 0; i < columns; i++) {
+                long column = (firstColumn + i) % AXIS_CELLS;
+                Cell cell = cellAt(row, column);
+                if (index.isCovered(cell.latitude, cell.longitude, cell.radius)) continue;
+
+                cells.add(cell);
+                distances.add(GeoHash.distanceMeters(centerLat, centerLng,
+                        cell.latitude, cell.longitude));
+            }
+        }
+
+        // Sort by distance, most viewports hold only a handful of cells
+        Integer[] order = new Integer[cells.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances.get(a), distances.get(b)));
+
+        List<Cell> result = new ArrayList<>(Math.min(max, order.length));
+        for (int i = 0; i < order.length && i < max; i++) {
+            result.add(cells.get(order[i]));
+        }
+        return result;
+    }
+
+    private static Cell cellAt(long row, long column) {
+        double height = GeoHash.cellHeightDegrees(BITS_PER_AXIS);
+        double width = GeoHash.cellWidthDegrees(BITS_PER_AXIS);
+        double latitude = -90 + (row + 0.5) * height;
+        double longitude = -180 + (column + 0.5) * width;
+
+        // The search circle runs through the corners of the cell
+        double radius = GeoHash.distanceMeters(latitude, longitude,
+                latitude + height / 2, longitude + width / 2);
+        return new Cell(latitude, longitude, (int) Math.ceil(radius));
+    }
+
+    private static double wrap(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+}
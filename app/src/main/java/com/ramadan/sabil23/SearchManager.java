@@ -11,6 +11,7 @@ import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.api.model.TypeFilter;
 import com.google.android.libraries.places.api.net.FindAutocompletePredictionsRequest;
 import com.google.android.libraries.places.api.net.PlacesClient;
+import com.ramadan.sabil23.model.Restaurant;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -18,7 +19,9 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -39,11 +42,26 @@ public class SearchManager {
     private static final String PLACES_API_BASE_URL = "https://maps.googleapis.com/maps/api/place/";
     private static final String AUTOCOMPLETE_ENDPOINT = "autocomplete/json?";
     private static final String PLACE_DETAILS_ENDPOINT = "details/json?";
+    private static final String TEXT_SEARCH_ENDPOINT = "textsearch/json?";
 
     // Search parameters
     private static final int DEFAULT_RADIUS = 50000; // 50km
     private static final String DEFAULT_LANGUAGE = "en";
 
+    // Ramadan suggestion parameters
+    private static final String[] RAMADAN_KEYWORDS = {
+            "iftar", "halal", "mosque", "islamic", "muslim", "ramadan"
+    };
+    // Keyword requests in flight at once, the rest wait for one of them to finish
+    private static final int MAX_PARALLEL_KEYWORD_REQUESTS = 3;
+    private static final long KEYWORD_REQUEST_DEADLINE_MS = 5000;
+    private static final int MAX_RAMADAN_SUGGESTIONS = 20;
+    private static final double RELEVANCE_WEIGHT = 0.7;
+    private static final double DISTANCE_DECAY_METERS = 5000;
+    private static final int LOCAL_SUGGESTION_RADIUS = 5000; // 5km
+    private static final int MIN_LOCAL_RAMADAN_SUGGESTIONS = 10;
+    private static final int MAX_STORED_SUGGESTIONS = 10;
+
     // API key
     private String apiKey;
 
@@ -53,6 +71,9 @@ public class SearchManager {
     // Places client
     private PlacesClient placesClient;
 
+    // Restaurants already loaded on this device
+    private RestaurantManager restaurantManager;
+
     // Autocomplete session token
     private AutocompleteSessionToken sessionToken;
 
@@ -78,6 +99,7 @@ public class SearchManager {
     private SearchManager(Context context, PlacesClient placesClient) {
         this.apiKey = context.getString(R.string.google_maps_key);
         this.placesClient = placesClient;
+        this.restaurantManager = RestaurantManager.getInstance(context);
         this.sessionToken = AutocompleteSessionToken.newInstance();
         this.httpClient = new OkHttpClient.Builder()
                 .connectTimeout(10, TimeUnit.SECONDS)
@@ -174,10 +196,43 @@ public class SearchManager {
                 })
                 .addOnFailureListener(exception -> {
                     Log.e(TAG, "Autocomplete prediction failed", exception);
-                    callback.onSearchFailed("Error getting suggestions: " + exception.getMessage());
+                    getStoredSuggestions(query, "Error getting suggestions: " + exception.getMessage(), callback);
                 });
     }
 
+    /**
+     * Suggests restaurants stored on the device whose name or address match the query,
+     * used when autocomplete is not reachable
+     */
+    private void getStoredSuggestions(String query, String errorMessage, final PlaceSearchCallback callback) {
+        restaurantManager.searchStoredRestaurants(query, MAX_STORED_SUGGESTIONS,
+                new RestaurantManager.RestaurantSearchCallback() {
+            @Override
+            public void onRestaurantsFound(List<Restaurant> restaurants) {
+                if (restaurants.isEmpty()) {
+                    callback.onSearchFailed(errorMessage);
+                    return;
+                }
+
+                List<PlaceSuggestion> suggestions = new ArrayList<>(restaurants.size());
+                for (Restaurant restaurant : restaurants) {
+                    PlaceSuggestion suggestion = new PlaceSuggestion(
+                            restaurant.getId(),
+                            restaurant.getName(),
+                            restaurant.getAddress() != null ? restaurant.getAddress() : "");
+                    suggestion.setLocation(restaurant.getPosition());
+                    suggestions.add(suggestion);
+                }
+                callback.onPlaceSuggestionsFound(suggestions);
+            }
+
+            @Override
+            public void onSearchFailed(String message) {
+                callback.onSearchFailed(errorMessage);
+            }
+        });
+    }
+
     /**
      * Gets details for a place
      */
@@ -301,101 +356,264 @@ public class SearchManager {
     }
 
     /**
-     * Gets Ramadan-specific suggestions near a location
+     * Gets Ramadan-specific suggestions near a location.
+     * All keywords are searched concurrently and merged, so the result arrives after
+     * roughly the slowest single request. Keywords that fail or miss their deadline are
+     * skipped and the remaining results are still returned.
      */
     public void getRamadanSuggestions(LatLng location, final PlaceSearchCallback callback) {
-        // Keywords related to Ramadan
-        String[] ramadanKeywords = {
-                "iftar", "halal", "mosque", "islamic", "muslim", "ramadan"
-        };
-
-        // Build the URL with the first keyword
-        StringBuilder urlBuilder = new StringBuilder(PLACES_API_BASE_URL)
-                .append("textsearch/json?")
-                .append("location=").append(location.latitude).append(",").append(location.longitude)
-                .append("&radius=").append(DEFAULT_RADIUS)
-                .append("&query=").append(ramadanKeywords[0])
-                .append("&key=").append(apiKey);
+        List<PlaceSuggestion> local = getLocalRamadanSuggestions(location);
+        if (local != null) {
+            callback.onPlaceSuggestionsFound(local);
+            return;
+        }
+        new RamadanSuggestionFanOut(location, callback).start();
+    }
 
-        // Create request
-        Request request = new Request.Builder()
-                .url(urlBuilder.toString())
-                .build();
+    /**
+     * Answers Ramadan suggestions from restaurants already loaded around the location.
+     * Returns null when the area was not searched recently or too few restaurants match.
+     */
+    private List<PlaceSuggestion> getLocalRamadanSuggestions(LatLng location) {
+        List<Restaurant> cached = restaurantManager.findCachedRestaurants(location,
+                LOCAL_SUGGESTION_RADIUS, RestaurantManager.TYPE_ALL, RestaurantManager.PRICE_ANY, false);
+        if (cached == null) return null;
+
+        List<RankedSuggestion> ranked = new ArrayList<>();
+        for (Restaurant restaurant : cached) {
+            if (!restaurant.isHalal() && !restaurant.hasIftarSpecial()) continue;
+
+            PlaceSuggestion suggestion = new PlaceSuggestion(restaurant.getId(),
+                    restaurant.getName(), restaurant.getAddress() != null ? restaurant.getAddress() : "");
+            suggestion.setLocation(restaurant.getPosition());
+            suggestion.setDistanceText(RestaurantManager.formatDistance(restaurant.getDistance()));
+
+            RankedSuggestion entry = new RankedSuggestion(suggestion, restaurant.getDistance());
+            entry.relevance = Math.max(restaurant.getHalalScore(), restaurant.getIftarScore());
+            double closeness = Math.exp(-entry.distanceMeters / DISTANCE_DECAY_METERS);
+            entry.score = RELEVANCE_WEIGHT * entry.relevance + (1 - RELEVANCE_WEIGHT) * closeness;
+            ranked.add(entry);
+        }
 
-        // Execute request
-        httpClient.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                Log.e(TAG, "Ramadan suggestions request failed", e);
-                callback.onSearchFailed("Network error: " + e.getMessage());
+        if (ranked.size() < MIN_LOCAL_RAMADAN_SUGGESTIONS) return null;
+
+        Collections.sort(ranked, (a, b) -> Double.compare(b.score, a.score));
+        List<PlaceSuggestion> suggestions = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < MAX_RAMADAN_SUGGESTIONS; i++) {
+            suggestions.add(ranked.get(i).suggestion);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Runs one text search per Ramadan keyword and merges the results by place ID
+     */
+    private class RamadanSuggestionFanOut {
+        private final LatLng location;
+        private final PlaceSearchCallback callback;
+
+        // Merged results in first-seen order, guarded by this
+        private final Map<String, RankedSuggestion> merged = new LinkedHashMap<>();
+        private int nextKeyword = 0;
+        private int completed = 0;
+        private int failed = 0;
+        private String lastError;
+
+        RamadanSuggestionFanOut(LatLng location, PlaceSearchCallback callback) {
+            this.location = location;
+            this.callback = callback;
+        }
+
+        void start() {
+            int initial = Math.min(MAX_PARALLEL_KEYWORD_REQUESTS, RAMADAN_KEYWORDS.length);
+            for (int i = 0; i < initial; i++) {
+                launchNext();
             }
+        }
 
-            @Override
-            public void onResponse(Call call, Response response) throws IOException {
-                if (!response.isSuccessful()) {
-                    callback.onSearchFailed("API error: " + response.code());
-                    return;
-                }
+        /**
+         * Starts the next keyword request, keeping at most MAX_PARALLEL_KEYWORD_REQUESTS in flight
+         */
+        private void launchNext() {
+            final String keyword;
+            final int keywordIndex;
+            synchronized (this) {
+                if (nextKeyword >= RAMADAN_KEYWORDS.length) return;
+                keywordIndex = nextKeyword++;
+                keyword = RAMADAN_KEYWORDS[keywordIndex];
+            }
 
-                try {
-                    String responseData = response.body().string();
-                    JSONObject jsonResponse = new JSONObject(responseData);
+            String url = PLACES_API_BASE_URL + TEXT_SEARCH_ENDPOINT +
+                    "location=" + location.latitude + "," + location.longitude +
+                    "&radius=" + DEFAULT_RADIUS +
+                    "&query=" + keyword +
+                    "&key=" + apiKey;
+
+            Request request = new Request.Builder()
+                    .url(url)
+                    .build();
+
+            // Give each keyword its own deadline so one slow request cannot hold up the rest
+            Call call = httpClient.newCall(request);
+            call.timeout().timeout(KEYWORD_REQUEST_DEADLINE_MS, TimeUnit.MILLISECONDS);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.w(TAG, "Ramadan suggestions request failed for '" + keyword + "'", e);
+                    onKeywordFailed("Network error: " + e.getMessage());
+                }
 
-                    // Check status
-                    String status = jsonResponse.getString("status");
-                    if (!status.equals("OK") && !status.equals("ZERO_RESULTS")) {
-                        callback.onSearchFailed("API error: " + status);
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    if (!response.isSuccessful()) {
+                        onKeywordFailed("API error: " + response.code());
                         return;
                     }
 
-                    // Parse results
-                    List<PlaceSuggestion> suggestions = new ArrayList<>();
+                    try {
+                        String responseData = response.body().string();
+                        JSONObject jsonResponse = new JSONObject(responseData);
 
-                    if (status.equals("OK")) {
-                        JSONArray results = jsonResponse.getJSONArray("results");
+                        // Check status
+                        String status = jsonResponse.getString("status");
+                        if (!status.equals("OK") && !status.equals("ZERO_RESULTS")) {
+                            onKeywordFailed("API error: " + status);
+                            return;
+                        }
 
-                        for (int i = 0; i < results.length(); i++) {
-                            JSONObject result = results.getJSONObject(i);
+                        JSONArray results = status.equals("OK")
+                                ? jsonResponse.getJSONArray("results") : new JSONArray();
+                        onKeywordLoaded(keywordIndex, results);
 
-                            String placeId = result.getString("place_id");
-                            String name = result.getString("name");
-                            String address = result.getString("formatted_address");
+                    } catch (JSONException e) {
+                        Log.e(TAG, "Error parsing Ramadan suggestions for '" + keyword + "'", e);
+                        onKeywordFailed("Error parsing data: " + e.getMessage());
+                    }
+                }
+            });
+        }
 
-                            PlaceSuggestion suggestion = new PlaceSuggestion(placeId, name, address);
+        /**
+         * Merges one keyword's results. Earlier positions in a keyword's results count more.
+         */
+        private void onKeywordLoaded(int keywordIndex, JSONArray results) throws JSONException {
+            synchronized (this) {
+                for (int i = 0; i < results.length(); i++) {
+                    JSONObject result = results.getJSONObject(i);
+                    String placeId = result.getString("place_id");
+
+                    RankedSuggestion ranked = merged.get(placeId);
+                    if (ranked == null) {
+                        PlaceSuggestion suggestion = new PlaceSuggestion(placeId,
+                                result.getString("name"),
+                                result.optString("formatted_address", ""));
+
+                        // Set location
+                        JSONObject locationObj = result.getJSONObject("geometry").getJSONObject("location");
+                        suggestion.setLocation(new LatLng(
+                                locationObj.getDouble("lat"),
+                                locationObj.getDouble("lng")));
+
+                        // Calculate distance
+                        float[] distance = new float[1];
+                        Location.distanceBetween(
+                                location.latitude, location.longitude,
+                                suggestion.getLocation().latitude, suggestion.getLocation().longitude,
+                                distance);
+
+                        // Format distance
+                        if (distance[0] < 1000) {
+                            suggestion.setDistanceText(Math.round(distance[0]) + " m");
+                        } else {
+                            suggestion.setDistanceText(String.format("%.1f km", distance[0] / 1000));
+                        }
 
-                            // Set location
-                            JSONObject locationObj = result.getJSONObject("geometry").getJSONObject("location");
-                            suggestion.setLocation(new LatLng(
-                                    locationObj.getDouble("lat"),
-                                    locationObj.getDouble("lng")));
+                        ranked = new RankedSuggestion(suggestion, distance[0]);
+                        merged.put(placeId, ranked);
+                    }
 
-                            // Calculate distance
-                            float[] results1 = new float[1];
-                            Location.distanceBetween(
-                                    location.latitude, location.longitude,
-                                    suggestion.getLocation().latitude, suggestion.getLocation().longitude,
-                                    results1);
+                    ranked.relevance += 1.0 / (1 + i);
+                }
+            }
+            onKeywordDone();
+        }
 
-                            // Format distance
-                            if (results1[0] < 1000) {
-                                suggestion.setDistanceText(Math.round(results1[0]) + " m");
-                            } else {
-                                suggestion.setDistanceText(String.format("%.1f km", results1[0] / 1000));
-                            }
+        private void onKeywordFailed(String errorMessage) {
+            synchronized (this) {
+                failed++;
+                lastError = errorMessage;
+            }
+            onKeywordDone();
+        }
 
-                            suggestions.add(suggestion);
-                        }
-                    }
+        /**
+         * Starts the next keyword, or delivers the merged results once every keyword is done
+         */
+        private void onKeywordDone() {
+            boolean finished;
+            int failedCount;
+            synchronized (this) {
+                completed++;
+                finished = completed == RAMADAN_KEYWORDS.length;
+                failedCount = failed;
+            }
 
-                    // Return results
-                    callback.onPlaceSuggestionsFound(suggestions);
+            if (!finished) {
+                launchNext();
+                return;
+            }
 
-                } catch (JSONException e) {
-                    Log.e(TAG, "Error parsing Ramadan suggestions", e);
-                    callback.onSearchFailed("Error parsing data: " + e.getMessage());
-                }
+            if (failedCount == RAMADAN_KEYWORDS.length) {
+                callback.onSearchFailed(lastError);
+                return;
             }
-        });
+
+            if (failedCount > 0) {
+                Log.w(TAG, "Returning partial Ramadan suggestions, " + failedCount + " keyword(s) failed");
+            }
+            callback.onPlaceSuggestionsFound(rankMergedSuggestions());
+        }
+
+        /**
+         * Orders merged suggestions by a mix of keyword relevance and closeness
+         */
+        private synchronized List<PlaceSuggestion> rankMergedSuggestions() {
+            List<RankedSuggestion> ranked = new ArrayList<>(merged.values());
+
+            double maxRelevance = 0;
+            for (RankedSuggestion suggestion : ranked) {
+                maxRelevance = Math.max(maxRelevance, suggestion.relevance);
+            }
+
+            for (RankedSuggestion suggestion : ranked) {
+                double relevance = maxRelevance > 0 ? suggestion.relevance / maxRelevance : 0;
+                double closeness = Math.exp(-suggestion.distanceMeters / DISTANCE_DECAY_METERS);
+                suggestion.score = RELEVANCE_WEIGHT * relevance + (1 - RELEVANCE_WEIGHT) * closeness;
+            }
+
+            Collections.sort(ranked, (a, b) -> Double.compare(b.score, a.score));
+
+            List<PlaceSuggestion> suggestions = new ArrayList<>();
+            for (int i = 0; i < ranked.size() && i < MAX_RAMADAN_SUGGESTIONS; i++) {
+                suggestions.add(ranked.get(i).suggestion);
+            }
+            return suggestions;
+        }
+    }
+
+    /**
+     * A merged suggestion with its ranking inputs
+     */
+    private static class RankedSuggestion {
+        final PlaceSuggestion suggestion;
+        final double distanceMeters;
+        double relevance;
+        double score;
+
+        RankedSuggestion(PlaceSuggestion suggestion, double distanceMeters) {
+            this.suggestion = suggestion;
+            this.distanceMeters = distanceMeters;
+        }
     }
 
     /**
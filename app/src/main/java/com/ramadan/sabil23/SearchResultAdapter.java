@@ -39,7 +39,7 @@ public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapte
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         Restaurant restaurant = restaurants.get(position);
         holder.nameTextView.setText(restaurant.getName());
-        holder.addressTextView.setText(restaurant.getVicinity());
+        holder.addressTextView.setText(restaurant.getAddress());
 
         // Set rating if available
         if (restaurant.getRating() > 0) {
@@ -50,17 +50,17 @@ public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapte
         }
 
         // Set price level if available
-        if (restaurant.getPriceLevel() != null && !restaurant.getPriceLevel().isEmpty()) {
+        if (restaurant.getPriceLevel() > 0) {
             holder.priceLevelTextView.setVisibility(View.VISIBLE);
-            holder.priceLevelTextView.setText(restaurant.getPriceLevel());
+            holder.priceLevelTextView.setText(RestaurantManager.formatPriceLevel(restaurant.getPriceLevel()));
         } else {
             holder.priceLevelTextView.setVisibility(View.GONE);
         }
 
         // Set open status
-        holder.statusTextView.setText(restaurant.isOpen() ? "Open" : "Closed");
+        holder.statusTextView.setText(restaurant.isOpenNow() ? "Open" : "Closed");
         holder.statusTextView.setTextColor(holder.itemView.getContext().getResources().getColor(
-                restaurant.isOpen() ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
+                restaurant.isOpenNow() ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
 
         // Set click listener
         holder.itemView.setOnClickListener(v -> {
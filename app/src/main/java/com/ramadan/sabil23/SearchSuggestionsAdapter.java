@@ -68,6 +68,8 @@ public class SearchSuggestionsAdapter extends RecyclerView.Adapter<SearchSuggest
      */
     public void updateSuggestions(List<SuggestionItem> newSuggestions) {
         this.suggestions = newSuggestions;
+        // Rows are bound in the next layout pass
+        FrameMetricsMonitor.getInstance(context).markOperation(FrameMetricsMonitor.OP_LIST_BIND);
         notifyDataSetChanged();
     }
 
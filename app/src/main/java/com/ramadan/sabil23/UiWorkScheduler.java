@@ -0,0 +1,171 @@
+package com.ramadan.sabil23;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies large batches of UI work a few items per frame.
+ *
+ * A batch is split into chunks sized so that the work done in one frame stays within
+ * FRAME_BUDGET_NS, using the time per item measured on the chunks applied so far. Work
+ * runs from a Choreographer frame callback, so input and drawing get the rest of each
+ * frame. Higher priority batches go first, batches of the same priority in the order
+ * they were submitted. A batch that a newer result set supersedes is cancelled and
+ * nothing more of it is applied.
+ *
+ * Must be used on the main thread.
+ */
+public class UiWorkScheduler implements Choreographer.FrameCallback {
+    private static final String TAG = "UiWorkScheduler";
+
+    // Priorities, lower runs first
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    // Main thread time given to batches in each frame, half of a 60 Hz frame
+    private static final long FRAME_BUDGET_NS = 8_000_000L;
+
+    // Size of the first chunk of a batch, before its cost per item is known
+    private static final int INITIAL_CHUNK_SIZE = 8;
+
+    // Singleton instance
+    private static UiWorkScheduler instance;
+
+    /**
+     * Applies one chunk of a batch
+     */
+    public interface ChunkHandler<T> {
+        void apply(List<T> chunk);
+    }
+
+    private final List<Task<?>> tasks = new ArrayList<>();
+    private boolean frameScheduled;
+
+    /**
+     * Gets the singleton instance
+     */
+    public static synchronized UiWorkScheduler getInstance() {
+        if (instance == null) {
+            instance = new UiWorkScheduler();
+        }
+        return instance;
+    }
+
+    private UiWorkScheduler() {
+    }
+
+    /**
+     * Applies items in chunks from the next frame on, then runs onDone unless the batch
+     * was cancelled. Returns the batch so it can be cancelled.
+     */
+    public <T> Task<T> submit(List<T> items, int priority, ChunkHandler<T> handler, Runnable onDone) {
+        Task<T> task = new Task<>(new ArrayList<>(items), priority, handler, onDone);
+
+        // Keep the list ordered by priority, submission order within a priority
+        int index = tasks.size();
+        while (index > 0 && tasks.get(index - 1).priority > priority) {
+            index--;
+        }
+        tasks.add(index, task);
+        scheduleFrame();
+        return task;
+    }
+
+    /**
+     * Number of batches not yet finished or cancelled
+     */
+    public int getPendingCount() {
+        return tasks.size();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        long deadline = System.nanoTime() + FRAME_BUDGET_NS;
+
+        // Handlers may submit or cancel batches, so the list is read again each time
+        while (!tasks.isEmpty() && System.nanoTime() < deadline) {
+            Task<?> task = tasks.get(0);
+            if (!task.cancelled) {
+                task.run(deadline);
+            }
+            if (!task.cancelled && !task.isDone()) break; // Out of time
+
+            tasks.remove(task);
+            if (!task.cancelled && task.onDone != null) {
+                task.onDone.run();
+            }
+        }
+
+        if (!tasks.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled) return;
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * A batch of items being applied
+     */
+    public static class Task<T> {
+        private final List<T> items;
+        private final int priority;
+        private final ChunkHandler<T> handler;
+        private final Runnable onDone;
+        private int position;
+        private boolean cancelled;
+
+        // Measured cost per item, 0 until the first chunk ran
+        private long nanosPerItem;
+
+        Task(List<T> items, int priority, ChunkHandler<T> handler, Runnable onDone) {
+            this.items = items;
+            this.priority = priority;
+            this.handler = handler;
+            this.onDone = onDone;
+        }
+
+        /**
+         * Stops the batch, items not applied yet never are and onDone is not run
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return position >= items.size();
+        }
+
+        /**
+         * Applies chunks until the batch is done or the deadline has passed
+         */
+        void run(long deadline) {
+            while (!cancelled && !isDone()) {
+                long start = System.nanoTime();
+                if (start >= deadline) return;
+
+                int size = nanosPerItem > 0
+                        ? (int) Math.max(1, (deadline - start) / nanosPerItem)
+                        : INITIAL_CHUNK_SIZE;
+                int end = Math.min(items.size(), position + size);
+                handler.apply(items.subList(position, end));
+
+                // Average with the earlier chunks so one slow item does not stall the batch
+                long perItem = (System.nanoTime() - start) / (end - position);
+                nanosPerItem = Math.max(1, nanosPerItem > 0 ? (nanosPerItem + perItem) / 2 : perItem);
+                position = end;
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.ramadan.sabil23;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.maps.android.clustering.ClusterManager;
+import com.ramadan.sabil23.location.GeoHash;
+import com.ramadan.sabil23.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands a ClusterManager only the restaurants around the visible part of the map.
+ *
+ * Every restaurant shown is kept in a spatial index, and on camera idle the restaurants
+ * inside the viewport plus a margin are added to the cluster manager while the ones that
+ * left it are removed. At most MAX_LIVE_ITEMS are in the cluster manager at once, the
+ * ones nearest the center of the map win. Markers, clustering and map SDK overhead then
+ * only grow with what is near the screen, however many restaurants have been loaded.
+ * Below setMinZoom() nothing is materialized, a heatmap stands in for the markers there.
+ *
+ * Used as the camera idle listener of the map. Must be used on the main thread.
+ */
+public class ViewportMaterializer implements MarkerReconciler.Target, GoogleMap.OnCameraIdleListener {
+    private static final String TAG = "ViewportMaterializer";
+
+    // Extra area around the viewport, as a fraction of its size on each side
+    private static final double MARGIN_FRACTION = 0.5;
+
+    // Most restaurants handed to the cluster manager at once
+    static final int MAX_LIVE_ITEMS = 500;
+
+    private final GoogleMap map;
+    private final ClusterManager<Restaurant> clusterManager;
+    private final MarkerIconRenderer iconRenderer;
+
+    // Every restaurant shown, materialized or not
+    private final RestaurantSpatialIndex restaurants = new RestaurantSpatialIndex();
+
+    // Restaurants currently in the cluster manager, by place ID
+    private final Map<String, Restaurant> live = new HashMap<>();
+
+    // Viewport plus margin at the last camera idle
+    private double south, west, north, east;
+    private boolean hasBounds;
+
+    // Zoom below which no restaurant is materialized, and whether the camera is there
+    private float minZoom;
+    private boolean suspended;
+
+    public ViewportMaterializer(GoogleMap map, ClusterManager<Restaurant> clusterManager,
+                                MarkerIconRenderer iconRenderer) {
+        this.map = map;
+        this.clusterManager = clusterManager;
+        this.iconRenderer = iconRenderer;
+    }
+
+    @Override
+    public void add(Restaurant restaurant) {
+        restaurants.put(restaurant);
+        if (!suspended && live.size() < MAX_LIVE_ITEMS && inBounds(restaurant)) {
+            live.put(restaurant.getId(), restaurant);
+            clusterManager.addItem(restaurant);
+        }
+    }
+
+    @Override
+    public void update(Restaurant shown, Restaurant restaurant, boolean iconChanged) {
+        restaurants.put(restaurant);
+
+        // Items are equal by place ID, so the new copy takes over the marker of the old one
+        // and the renderer updates it in place instead of removing and re-adding it
+        if (live.containsKey(restaurant.getId())) {
+            live.put(restaurant.getId(), restaurant);
+            clusterManager.updateItem(restaurant);
+        } else if (!suspended && live.size() < MAX_LIVE_ITEMS && inBounds(restaurant)) {
+            live.put(restaurant.getId(), restaurant);
+            clusterManager.addItem(restaurant);
+        }
+    }
+
+    @Override
+    public void remove(Restaurant restaurant) {
+        restaurants.remove(restaurant.getId());
+        Restaurant previous = live.remove(restaurant.getId());
+        if (previous != null) {
+            clusterManager.removeItem(previous);
+        }
+    }
+
+    @Override
+    public void commit() {
+        clusterManager.cluster();
+    }
+
+    /**
+     * Sets the zoom below which no restaurant is handed to the cluster manager, applied
+     * at the next camera idle
+     */
+    public void setMinZoom(float minZoom) {
+        this.minZoom = minZoom;
+    }
+
+    /**
+     * Whether the camera is zoomed out below the minimum zoom
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Number of restaurants currently handed to the cluster manager
+     */
+    public int getLiveCount() {
+        return live.size();
+    }
+
+    @Override
+    public void onCameraIdle() {
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        double height = bounds.northeast.latitude - bounds.southwest.latitude;
+        double width = bounds.northeast.longitude - bounds.southwest.longitude;
+        if (width < 0) width += 360;
+
+        south = Math.max(-90, bounds.southwest.latitude - height * MARGIN_FRACTION);
+        north = Math.min(90, bounds.northeast.latitude + height * MARGIN_FRACTION);
+        if (width * (1 + 2 * MARGIN_FRACTION) >= 360) {
+            west = -180;
+            east = 180;
+        } else {
+            west = wrap(bounds.southwest.longitude - width * MARGIN_FRACTION);
+            east = wrap(bounds.northeast.longitude + width * MARGIN_FRACTION);
+        }
+        hasBounds = true;
+        suspended = map.getCameraPosition().zoom < minZoom;
+
+        List<Restaurant> wanted = suspended
+                ? new ArrayList<>()
+                : restaurants.queryBounds(south, west, north, east);
+        if (wanted.size() > MAX_LIVE_ITEMS) {
+            wanted = nearest(wanted, map.getCameraPosition().target, MAX_LIVE_ITEMS);
+        }
+
+        Set<String> wantedIds = new HashSet<>(wanted.size() * 2);
+        for (Restaurant restaurant : wanted) {
+            wantedIds.add(restaurant.getId());
+        }
+
+        // Drop what moved out of range, then add what came into it
+        Iterator<Map.Entry<String, Restaurant>> iterator = live.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Restaurant> entry = iterator.next();
+            if (!wantedIds.contains(entry.getKey())) {
+                clusterManager.removeItem(entry.getValue());
+                iterator.remove();
+            }
+        }
+        List<Restaurant> added = new ArrayList<>();
+        for (Restaurant restaurant : wanted) {
+            if (!live.containsKey(restaurant.getId())) {
+                live.put(restaurant.getId(), restaurant);
+                added.add(restaurant);
+            }
+        }
+
+        // Icons of restaurants coming back into range may have left the icon cache, draw
+        // them off the main thread before the renderer asks for them
+        if (added.isEmpty()) {
+            recluster(added);
+        } else {
+            iconRenderer.prepareIcons(added, () -> recluster(added));
+        }
+    }
+
+    /**
+     * Hands newly live restaurants to the cluster manager, lets a screen based algorithm
+     * follow the camera, then clusters the new items
+     */
+    private void recluster(List<Restaurant> added) {
+        for (Restaurant restaurant : added) {
+            // Skips restaurants removed meanwhile and takes the latest copy of updated ones
+            Restaurant current = live.get(restaurant.getId());
+            if (current != null) {
+                clusterManager.addItem(current);
+            }
+        }
+        clusterManager.onCameraIdle();
+        clusterManager.cluster();
+    }
+
+    private boolean inBounds(Restaurant restaurant) {
+        if (!hasBounds) return true;
+
+        double lat = restaurant.getLatitude();
+        double lng = restaurant.getLongitude();
+        boolean inLng = west > east ? (lng >= west || lng <= east) : (lng >= west && lng <= east);
+        return lat >= south && lat <= north && inLng;
+    }
+
+    private static double wrap(double longitude) {
+        if (longitude < -180) return longitude + 360;
+        if (longitude > 180) return longitude - 360;
+        return longitude;
+    }
+
+    /**
+     * Returns the count restaurants nearest to a point
+     */
+    private static List<Restaurant> nearest(List<Restaurant> restaurants, LatLng center, int count) {
+        int n = restaurants.size();
+        double[] distances = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Restaurant restaurant = restaurants.get(i);
+            distances[i] = GeoHash.distanceMeters(center.latitude, center.longitude,
+                    restaurant.getLatitude(), restaurant.getLongitude());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+        List<Restaurant> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(restaurants.get(order[i]));
+        }
+        return result;
+    }
+}
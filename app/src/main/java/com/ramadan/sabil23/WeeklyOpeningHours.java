@@ -0,0 +1,166 @@
+package com.ramadan.sabil23;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Calendar;
+
+/**
+ * A restaurant's weekly opening hours compiled into a bitmap of quarter-hour slots.
+ *
+ * The week has 7 x 96 = 672 slots packed into 11 longs, day 0 being Sunday as in the
+ * Places API "periods" format. A slot is set only when the restaurant is open for the
+ * whole quarter hour, so "open at T" and "open for the whole Iftar window" are simple
+ * bit tests that never report a restaurant open when it is not.
+ */
+public class WeeklyOpeningHours {
+    public static final int MINUTES_PER_SLOT = 15;
+    public static final int SLOTS_PER_DAY = 24 * 60 / MINUTES_PER_SLOT;
+    public static final int SLOTS_PER_WEEK = 7 * SLOTS_PER_DAY;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int WORD_COUNT = (SLOTS_PER_WEEK + 63) >>> 6;
+
+    private final long[] slots;
+
+    private WeeklyOpeningHours(long[] slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * Compiles the "opening_hours.periods" array of a Place Details response
+     */
+    public static WeeklyOpeningHours fromPeriods(JSONArray periods) throws JSONException {
+        WeeklyOpeningHours hours = new WeeklyOpeningHours(new long[WORD_COUNT]);
+
+        for (int i = 0; i < periods.length(); i++) {
+            JSONObject period = periods.getJSONObject(i);
+            JSONObject open = period.getJSONObject("open");
+            int openMinute = minuteOfWeek(open.getInt("day"), open.getString("time"));
+
+            // A single period without a close time means open around the clock
+            if (!period.has("close")) {
+                hours.setSlots(0, SLOTS_PER_WEEK);
+                break;
+            }
+
+            JSONObject close = period.getJSONObject("close");
+            int closeMinute = minuteOfWeek(close.getInt("day"), close.getString("time"));
+
+            // Periods that run past Saturday midnight wrap around to Sunday
+            if (closeMinute <= openMinute) {
+                closeMinute += 7 * MINUTES_PER_DAY;
+            }
+
+            // Only count quarter hours that are fully inside the period
+            int fromSlot = (openMinute + MINUTES_PER_SLOT - 1) / MINUTES_PER_SLOT;
+            int toSlot = closeMinute / MINUTES_PER_SLOT;
+            hours.setSlots(fromSlot, toSlot);
+        }
+
+        return hours;
+    }
+
+    /**
+     * Restores hours saved with toLongArray
+     */
+    public static WeeklyOpeningHours fromLongArray(long[] words) {
+        long[] slots = new long[WORD_COUNT];
+        System.arraycopy(words, 0, slots, 0, Math.min(words.length, WORD_COUNT));
+        return new WeeklyOpeningHours(slots);
+    }
+
+    /**
+     * Returns a copy of the bitmap for storage
+     */
+    public long[] toLongArray() {
+        return slots.clone();
+    }
+
+    /**
+     * Checks if the restaurant is open at the given time
+     */
+    public boolean isOpenAt(Calendar time) {
+        return isSlotSet(slotOf(time));
+    }
+
+    /**
+     * Checks if the restaurant is open at the given day (0 = Sunday) and minute of day
+     */
+    public boolean isOpenAt(int day, int minuteOfDay) {
+        return isSlotSet((day * MINUTES_PER_DAY + minuteOfDay) / MINUTES_PER_SLOT);
+    }
+
+    /**
+     * Checks if the restaurant stays open from start for the given number of minutes
+     */
+    public boolean isOpenThroughout(Calendar start, int durationMinutes) {
+        int startMinute = minuteOfWeek(start);
+        int fromSlot = startMinute / MINUTES_PER_SLOT;
+        int toSlot = (startMinute + durationMinutes + MINUTES_PER_SLOT - 1) / MINUTES_PER_SLOT;
+        return allSet(fromSlot, Math.max(toSlot, fromSlot + 1));
+    }
+
+    /**
+     * Checks if the restaurant is open at any time of the week
+     */
+    public boolean isEverOpen() {
+        for (long word : slots) {
+            if (word != 0) return true;
+        }
+        return false;
+    }
+
+    private boolean isSlotSet(int slot) {
+        slot %= SLOTS_PER_WEEK;
+        return (slots[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Sets slots [fromSlot, toSlot), wrapping past the end of the week
+     */
+    private void setSlots(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot < toSlot; ) {
+            int s = slot % SLOTS_PER_WEEK;
+            int run = Math.min(64 - (s & 63), Math.min(toSlot - slot, SLOTS_PER_WEEK - s));
+            slots[s >>> 6] |= mask(run) << (s & 63);
+            slot += run;
+        }
+    }
+
+    /**
+     * Checks that all slots in [fromSlot, toSlot) are set, wrapping past the end of the week
+     */
+    private boolean allSet(int fromSlot, int toSlot) {
+        for (int slot = fromSlot; slot < toSlot; ) {
+            int s = slot % SLOTS_PER_WEEK;
+            int run = Math.min(64 - (s & 63), Math.min(toSlot - slot, SLOTS_PER_WEEK - s));
+            long mask = mask(run) << (s & 63);
+            if ((slots[s >>> 6] & mask) != mask) return false;
+            slot += run;
+        }
+        return true;
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+
+    private static int slotOf(Calendar time) {
+        return minuteOfWeek(time) / MINUTES_PER_SLOT;
+    }
+
+    private static int minuteOfWeek(Calendar time) {
+        int day = time.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        return day * MINUTES_PER_DAY + time.get(Calendar.HOUR_OF_DAY) * 60 + time.get(Calendar.MINUTE);
+    }
+
+    /**
+     * Converts a Places API day and "HHMM" time to minutes since Sunday midnight
+     */
+    private static int minuteOfWeek(int day, String time) {
+        int hours = Integer.parseInt(time.substring(0, 2));
+        int minutes = Integer.parseInt(time.substring(2, 4));
+        return day * MINUTES_PER_DAY + hours * 60 + minutes;
+    }
+}
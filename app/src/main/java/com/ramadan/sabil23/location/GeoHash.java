@@ -0,0 +1,125 @@
+package com.ramadan.sabil23.location;
+
+/**
+ * Geohash encoding used to bucket coordinates into grid cells.
+ *
+ * A geohash of n bits interleaves n/2 longitude bits with n/2 latitude bits (longitude
+ * first), so nearby points share prefixes. Cells are handled as longs for map keys and
+ * as the usual base32 strings where a readable key is wanted.
+ */
+public final class GeoHash {
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    // Mean earth radius and length of one degree of latitude
+    public static final double EARTH_RADIUS_METERS = 6371000;
+    public static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+
+    private GeoHash() {
+    }
+
+    /**
+     * Encodes a coordinate into a geohash of the given number of bits (even, at most 62)
+     */
+    public static long encode(double latitude, double longitude, int bits) {
+        int half = bits / 2;
+        return cellOf(latitudeIndex(latitude, half), longitudeIndex(longitude, half), half);
+    }
+
+    /**
+     * Encodes a coordinate into a base32 geohash of the given length (at most 12)
+     */
+    public static String encodeString(double latitude, double longitude, int length) {
+        int bits = length * 5;
+        // Odd bit counts give longitude one more bit than latitude
+        int lngBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        long lngIndex = index(longitude, -180, 360, lngBits);
+        long latIndex = index(latitude, -90, 180, latBits);
+
+        long hash = 0;
+        for (int i = 0; i < bits; i++) {
+            // Even positions (from the left) are longitude bits
+            boolean lng = (i & 1) == 0;
+            int bit = lng ? lngBits - 1 - i / 2 : latBits - 1 - i / 2;
+            long value = lng ? (lngIndex >>> bit) & 1 : (latIndex >>> bit) & 1;
+            hash = (hash << 1) | value;
+        }
+
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (hash & 31)];
+            hash >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Combines latitude and longitude cell indices into a geohash of 2 * bitsPerAxis bits
+     */
+    public static long cellOf(long latitudeIndex, long longitudeIndex, int bitsPerAxis) {
+        return (spread(longitudeIndex) << 1 | spread(latitudeIndex)) & mask(2 * bitsPerAxis);
+    }
+
+    /**
+     * Returns the latitude row of a coordinate on a grid with bitsPerAxis bits per axis
+     */
+    public static long latitudeIndex(double latitude, int bitsPerAxis) {
+        return index(latitude, -90, 180, bitsPerAxis);
+    }
+
+    /**
+     * Returns the longitude column of a coordinate on a grid with bitsPerAxis bits per axis
+     */
+    public static long longitudeIndex(double longitude, int bitsPerAxis) {
+        return index(longitude, -180, 360, bitsPerAxis);
+    }
+
+    /**
+     * Height of a cell in degrees of latitude
+     */
+    public static double cellHeightDegrees(int bitsPerAxis) {
+        return 180.0 / (1L << bitsPerAxis);
+    }
+
+    /**
+     * Width of a cell in degrees of longitude
+     */
+    public static double cellWidthDegrees(int bitsPerAxis) {
+        return 360.0 / (1L << bitsPerAxis);
+    }
+
+    /**
+     * Great-circle distance in meters
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDLat = Math.sin((phi2 - phi1) / 2);
+        double sinDLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double a = sinDLat * sinDLat + Math.cos(phi1) * Math.cos(phi2) * sinDLng * sinDLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static long index(double value, double min, double range, int bits) {
+        long cells = 1L << bits;
+        long index = (long) Math.floor((value - min) / range * cells);
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    /**
+     * Spreads the low 31 bits of value so that bit i moves to bit 2i
+     */
+    private static long spread(long value) {
+        long x = value & 0x7FFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    private static long mask(int bits) {
+        return bits >= 64 ? -1L : (1L << bits) - 1;
+    }
+}
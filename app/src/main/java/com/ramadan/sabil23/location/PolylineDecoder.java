@@ -0,0 +1,115 @@
+package com.ramadan.sabil23.location;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decoder for the encoded polylines of the Directions API.
+ *
+ * Points are decoded into a reusable Buffer of E5 fixed-point coordinates (degrees times
+ * 100000, the precision of the format), latitude and longitude interleaved in one int
+ * array. Decoding a route into a buffer that is already big enough allocates nothing.
+ * LatLng objects are only made by the list view, one per point read, where the Maps SDK
+ * wants a List<LatLng>. PolylineOptions.addAll and Polyline.setPoints read every point,
+ * so drawing a route still makes one LatLng per point drawn.
+ */
+public final class PolylineDecoder {
+
+    private static final double E5 = 1E5;
+
+    private PolylineDecoder() {
+    }
+
+    /**
+     * Decodes into buffer, reusing its arrays, or into a new buffer if it is null.
+     * Returns the buffer holding the points.
+     */
+    public static Buffer decode(String encoded, Buffer buffer) {
+        if (buffer == null) buffer = new Buffer();
+
+        // Every point takes at least two characters, so this is always enough
+        int len = encoded.length();
+        buffer.ensureCapacity(len / 2 + 1);
+
+        int[] e5 = buffer.e5;
+        int count = 0;
+        int index = 0;
+        int lat = 0, lng = 0;
+        while (index < len) {
+            int b, shift = 0, result = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += (result & 1) != 0 ? ~(result >> 1) : (result >> 1);
+
+            shift = 0;
+            result = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lng += (result & 1) != 0 ? ~(result >> 1) : (result >> 1);
+
+            e5[2 * count] = lat;
+            e5[2 * count + 1] = lng;
+            count++;
+        }
+        buffer.size = count;
+        return buffer;
+    }
+
+    /**
+     * Decodes into a new buffer and returns its LatLng view
+     */
+    public static List<LatLng> decode(String encoded) {
+        return decode(encoded, null).asLatLngList();
+    }
+
+    /**
+     * Decoded points as interleaved E5 latitude and longitude values
+     */
+    public static class Buffer {
+        private int[] e5 = new int[0];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public int getLatitudeE5(int index) { return e5[2 * index]; }
+        public int getLongitudeE5(int index) { return e5[2 * index + 1]; }
+        public double getLatitude(int index) { return e5[2 * index] / E5; }
+        public double getLongitude(int index) { return e5[2 * index + 1] / E5; }
+
+        /**
+         * Returns a view making a LatLng for each point read. The view reads the buffer, so
+         * it changes when the buffer is decoded into again.
+         */
+        public List<LatLng> asLatLngList() {
+            return new AbstractList<LatLng>() {
+                @Override
+                public LatLng get(int index) {
+                    if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index);
+                    return new LatLng(getLatitude(index), getLongitude(index));
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        void ensureCapacity(int points) {
+            if (e5.length < 2 * points) {
+                e5 = Arrays.copyOf(e5, Math.max(2 * points, 2 * e5.length));
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.ramadan.sabil23.location;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A route polyline at several levels of detail, one per map zoom level.
+ *
+ * Douglas-Peucker runs once over the whole route and gives every point an importance,
+ * the largest tolerance in meters at which it would still be kept. A zoom level keeps
+ * the points more important than the ground size of TOLERANCE_PX pixels at that zoom,
+ * so zoomed out a long route is drawn with a small share of its points and zoomed in
+ * with all of them. The indices of every level are computed up front, the LatLng view
+ * of a level makes a point as it is read, so drawing a level makes LatLngs for that
+ * level's points only.
+ */
+public final class SimplifiedRoute {
+
+    // Zoom levels with their own level of detail, the ends are clamped
+    public static final int MIN_ZOOM = 3;
+    public static final int MAX_ZOOM = 18;
+
+    // Largest deviation from the full route allowed, in screen pixels
+    private static final double TOLERANCE_PX = 1.0;
+
+    // Ground meters per pixel at zoom 0 on the equator, 256 pixel tiles
+    private static final double METERS_PER_PIXEL_ZOOM_0 = 156543.03392;
+
+    private final int[] e5;
+    private final int[][] levels;
+
+    /**
+     * Builds the levels of a decoded route. The points are copied, so the buffer can be
+     * decoded into again.
+     */
+    public SimplifiedRoute(PolylineDecoder.Buffer buffer) {
+        int n = buffer.size();
+        e5 = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            e5[2 * i] = buffer.getLatitudeE5(i);
+            e5[2 * i + 1] = buffer.getLongitudeE5(i);
+        }
+
+        double[] importance = computeImportance(e5, n);
+
+        // Ground size of a pixel shrinks by half with each zoom level
+        double cosLat = n > 0 ? Math.cos(Math.toRadians(e5[0] / 1E5)) : 1;
+        levels = new int[MAX_ZOOM - MIN_ZOOM + 1][];
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            double tolerance = TOLERANCE_PX * METERS_PER_PIXEL_ZOOM_0 * cosLat / (1 << zoom);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (importance[i] >= tolerance) count++;
+            }
+            int[] indices = new int[count];
+            int next = 0;
+            for (int i = 0; i < n; i++) {
+                if (importance[i] >= tolerance) indices[next++] = i;
+            }
+            levels[zoom - MIN_ZOOM] = indices;
+        }
+    }
+
+    /**
+     * Number of points of the full route
+     */
+    public int size() {
+        return e5.length / 2;
+    }
+
+    /**
+     * Returns the level of detail to draw at a camera zoom
+     */
+    public static int levelForZoom(float zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, (int) Math.ceil(zoom)));
+    }
+
+    /**
+     * Number of points kept at a level
+     */
+    public int getPointCount(int level) {
+        return levels[level - MIN_ZOOM].length;
+    }
+
+    /**
+     * Returns the points of a level as a view making a LatLng for each point read
+     */
+    public List<LatLng> getPoints(int level) {
+        final int[] indices = levels[level - MIN_ZOOM];
+        return new AbstractList<LatLng>() {
+            @Override
+            public LatLng get(int index) {
+                int point = indices[index];
+                return new LatLng(e5[2 * point] / 1E5, e5[2 * point + 1] / 1E5);
+            }
+
+            @Override
+            public int size() {
+                return indices.length;
+            }
+        };
+    }
+
+    /**
+     * Douglas-Peucker over the whole route, recording for each point the deviation at which
+     * it was kept. A point is never more important than the segment it split, so every
+     * level is a proper subset of the next one. The end points are always kept.
+     */
+    private static double[] computeImportance(int[] e5, int n) {
+        double[] importance = new double[n];
+        if (n == 0) return importance;
+        importance[0] = Double.MAX_VALUE;
+        importance[n - 1] = Double.MAX_VALUE;
+        if (n < 3) return importance;
+
+        // Local flat projection in meters around the start, fine at route scale
+        double cosLat = Math.cos(Math.toRadians(e5[0] / 1E5));
+        double scale = GeoHash.METERS_PER_DEGREE / 1E5;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            y[i] = e5[2 * i] * scale;
+            x[i] = e5[2 * i + 1] * scale * cosLat;
+        }
+
+        // Segments to split, as first, last and the importance of the point that made them
+        int[] firsts = new int[n];
+        int[] lasts = new int[n];
+        double[] limits = new double[n];
+        int top = 0;
+        firsts[top] = 0;
+        lasts[top] = n - 1;
+        limits[top] = Double.MAX_VALUE;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int first = firsts[top];
+            int last = lasts[top];
+            double limit = limits[top];
+            if (last - first < 2) continue;
+
+            int farthest = -1;
+            double maxDistance = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistance(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            double value = Math.min(maxDistance, limit);
+            importance[farthest] = value;
+
+            // Each split adds at most two segments and removes one, n entries are enough
+            firsts[top] = first;
+            lasts[top] = farthest;
+            limits[top] = value;
+            top++;
+            firsts[top] = farthest;
+            lasts[top] = last;
+            limits[top] = value;
+            top++;
+        }
+        return importance;
+    }
+
+    /**
+     * Distance from a point to a segment in the projected plane
+     */
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
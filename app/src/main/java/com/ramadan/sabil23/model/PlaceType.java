@@ -0,0 +1,90 @@
+package com.ramadan.sabil23.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Google Places types kept on a restaurant, stored as bits of a single long.
+ * Types the app never looks at are dropped when a result is parsed.
+ */
+public enum PlaceType {
+    RESTAURANT("restaurant"),
+    FOOD("food"),
+    CAFE("cafe"),
+    BAKERY("bakery"),
+    BAR("bar"),
+    MEAL_TAKEAWAY("meal_takeaway"),
+    MEAL_DELIVERY("meal_delivery"),
+    SUPERMARKET("supermarket"),
+    GROCERY_OR_SUPERMARKET("grocery_or_supermarket"),
+    STORE("store"),
+    SHOPPING_MALL("shopping_mall"),
+    LODGING("lodging"),
+    MOSQUE("mosque"),
+    POINT_OF_INTEREST("point_of_interest"),
+    ESTABLISHMENT("establishment"),
+    ARABIC_RESTAURANT("arabic_restaurant"),
+    MIDDLE_EASTERN_RESTAURANT("middle_eastern_restaurant"),
+    LEBANESE_RESTAURANT("lebanese_restaurant"),
+    TURKISH_RESTAURANT("turkish_restaurant"),
+    PAKISTANI_RESTAURANT("pakistani_restaurant"),
+    INDIAN_RESTAURANT("indian_restaurant"),
+    MEDITERRANEAN_RESTAURANT("mediterranean_restaurant"),
+    BUFFET_RESTAURANT("buffet_restaurant"),
+    FAST_FOOD_RESTAURANT("fast_food_restaurant");
+
+    private static final Map<String, PlaceType> BY_API_NAME = new HashMap<>();
+    private static final PlaceType[] VALUES = values();
+
+    static {
+        for (PlaceType type : VALUES) {
+            BY_API_NAME.put(type.apiName, type);
+        }
+    }
+
+    private final String apiName;
+
+    PlaceType(String apiName) {
+        this.apiName = apiName;
+    }
+
+    public String getApiName() {
+        return apiName;
+    }
+
+    public long mask() {
+        return 1L << ordinal();
+    }
+
+    /**
+     * Returns the type for a Places API type name, or null for types we don't keep
+     */
+    public static PlaceType fromApiName(String apiName) {
+        return BY_API_NAME.get(apiName);
+    }
+
+    /**
+     * Returns the mask bit for a Places API type name, 0 for types we don't keep
+     */
+    public static long maskOf(String apiName) {
+        PlaceType type = BY_API_NAME.get(apiName);
+        return type != null ? type.mask() : 0;
+    }
+
+    /**
+     * Expands a mask back into types
+     */
+    public static List<PlaceType> fromMask(long mask) {
+        List<PlaceType> types = new ArrayList<>(Long.bitCount(mask));
+        while (mask != 0) {
+            int ordinal = Long.numberOfTrailingZeros(mask);
+            if (ordinal < VALUES.length) {
+                types.add(VALUES[ordinal]);
+            }
+            mask &= mask - 1;
+        }
+        return types;
+    }
+}
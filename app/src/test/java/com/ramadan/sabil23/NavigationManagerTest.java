@@ -0,0 +1,49 @@
+package com.ramadan.sabil23;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class NavigationManagerTest {
+    private static final long DEPARTURE = 1_772_380_800_000L;
+
+    @Test
+    public void rankByArrival_reachableThenLateThenUnknown() {
+        Calendar maghrib = Calendar.getInstance();
+        maghrib.setTimeInMillis(DEPARTURE + 600_000); // 10 minutes
+
+        int[] seconds = {900, 300, NavigationManager.TRAVEL_TIME_UNKNOWN, 600, 60, 601, NavigationManager.TRAVEL_TIME_UNKNOWN};
+        int[] order = NavigationManager.rankByArrival(seconds, DEPARTURE, maghrib);
+
+        assertArrayEquals(new int[] {4, 1, 3, 5, 0, 2, 6}, order);
+    }
+
+    @Test
+    public void rankByArrival_tiesKeepIndexOrder() {
+        int[] seconds = {120, 120, 60, 120};
+        assertArrayEquals(new int[] {2, 0, 1, 3}, NavigationManager.rankByArrival(seconds, DEPARTURE, null));
+    }
+
+    @Test
+    public void rankByArrival_wideTravelTimesAndIndices() {
+        // Up to 2^20 destinations and travel times well past a day must not collide in the key
+        int n = 5000;
+        int[] seconds = new int[n];
+        for (int i = 0; i < n; i++) {
+            seconds[i] = (n - i) * 100_000;
+        }
+        int[] order = NavigationManager.rankByArrival(seconds, DEPARTURE, null);
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(n - 1 - i, order[i]);
+        }
+    }
+
+    @Test
+    public void rankByArrival_withoutMaghribEverythingKnownIsReachable() {
+        int[] seconds = {NavigationManager.TRAVEL_TIME_UNKNOWN, 86_400 * 30, 0};
+        assertArrayEquals(new int[] {2, 1, 0}, NavigationManager.rankByArrival(seconds, DEPARTURE, null));
+    }
+}
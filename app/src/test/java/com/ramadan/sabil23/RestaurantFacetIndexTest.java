@@ -0,0 +1,128 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.model.Restaurant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RestaurantFacetIndexTest {
+
+    @Test
+    public void select_orsPricesAndAndsOtherFacets() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        restaurants.add(restaurant("cheap-halal", RestaurantManager.PRICE_INEXPENSIVE, true, false, 4.2f));
+        restaurants.add(restaurant("cheap", RestaurantManager.PRICE_INEXPENSIVE, false, true, 3.5f));
+        restaurants.add(restaurant("moderate-halal", RestaurantManager.PRICE_MODERATE, true, true, 4.6f));
+        restaurants.add(restaurant("expensive-halal", RestaurantManager.PRICE_EXPENSIVE, true, true, 4.8f));
+        restaurants.add(restaurant("unknown-halal", 0, true, true, 2.5f));
+        RestaurantFacetIndex index = new RestaurantFacetIndex(restaurants);
+
+        long cheapOrModerate = RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_INEXPENSIVE)
+                | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_MODERATE);
+        long halal = RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_HALAL);
+
+        assertEquals(3, index.count(cheapOrModerate));
+        assertEquals(ids("cheap-halal", "moderate-halal"), ids(index.select(cheapOrModerate | halal)));
+        assertEquals(ids("moderate-halal"), ids(index.select(cheapOrModerate | halal
+                | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_RATING_4_5_PLUS))));
+        assertEquals(ids("unknown-halal"), ids(index.select(
+                RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_UNKNOWN))));
+        assertEquals(5, index.count(0));
+    }
+
+    @Test
+    public void facetCounts_priceCountsIgnoreSelectedPrices() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        restaurants.add(restaurant("a", RestaurantManager.PRICE_INEXPENSIVE, true, false, 4f));
+        restaurants.add(restaurant("b", RestaurantManager.PRICE_MODERATE, true, false, 3f));
+        restaurants.add(restaurant("c", RestaurantManager.PRICE_MODERATE, false, false, 4f));
+        RestaurantFacetIndex index = new RestaurantFacetIndex(restaurants);
+
+        long filter = RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_INEXPENSIVE)
+                | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_HALAL);
+        int[] counts = index.facetCounts(filter);
+
+        assertEquals(1, counts[RestaurantFacetIndex.FACET_PRICE_INEXPENSIVE]);
+        assertEquals(1, counts[RestaurantFacetIndex.FACET_PRICE_MODERATE]);
+        assertEquals(1, counts[RestaurantFacetIndex.FACET_HALAL]);
+        assertEquals(1, counts[RestaurantFacetIndex.FACET_RATING_4_PLUS]);
+        assertEquals(0, counts[RestaurantFacetIndex.FACET_IFTAR_SPECIAL]);
+    }
+
+    @Test
+    public void bitsets_matchLinearScanPastOneWord() {
+        Random random = new Random(7);
+        List<Restaurant> restaurants = new ArrayList<>();
+        RestaurantFacetIndex index = new RestaurantFacetIndex();
+        for (int i = 0; i < 300; i++) {
+            Restaurant restaurant = restaurant("r" + i, random.nextInt(5), random.nextBoolean(),
+                    random.nextBoolean(), random.nextInt(11) / 2f);
+            restaurants.add(restaurant);
+            assertEquals(i, index.add(restaurant));
+        }
+
+        long[] filters = {
+                0,
+                RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_HALAL),
+                RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_MODERATE)
+                        | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_RATING_4_PLUS),
+                RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_UNKNOWN)
+                        | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_PRICE_VERY_EXPENSIVE)
+                        | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_OPEN_NOW)
+                        | RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_RATING_3_PLUS),
+        };
+        for (long filter : filters) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < restaurants.size(); i++) {
+                boolean matches = linearMatch(restaurants.get(i), filter);
+                assertEquals(matches, index.matches(i, filter));
+                if (matches) expected.add(restaurants.get(i).getId());
+            }
+            assertEquals(expected, ids(index.select(filter)));
+            assertEquals(expected.size(), index.count(filter));
+        }
+    }
+
+    private static boolean linearMatch(Restaurant restaurant, long filter) {
+        long prices = filter & ((1L << (RestaurantFacetIndex.FACET_PRICE_VERY_EXPENSIVE + 1)) - 1);
+        if (prices != 0 && (prices & RestaurantFacetIndex.facet(restaurant.getPriceLevel())) == 0) return false;
+        if ((filter & RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_OPEN_NOW)) != 0
+                && !restaurant.isOpenNow()) return false;
+        if ((filter & RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_HALAL)) != 0
+                && !restaurant.isHalal()) return false;
+        if ((filter & RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_RATING_3_PLUS)) != 0
+                && restaurant.getRating() < 3f) return false;
+        return (filter & RestaurantFacetIndex.facet(RestaurantFacetIndex.FACET_RATING_4_PLUS)) == 0
+                || restaurant.getRating() >= 4f;
+    }
+
+    private static Restaurant restaurant(String id, int priceLevel, boolean halal, boolean openNow, float rating) {
+        return new Restaurant.Builder(id, id)
+                .setPriceLevel(priceLevel)
+                .setHalal(halal)
+                .setOpenNow(openNow)
+                .setRating(rating)
+                .build();
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    private static List<String> ids(List<Restaurant> restaurants) {
+        List<String> result = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            result.add(restaurant.getId());
+        }
+        return result;
+    }
+}
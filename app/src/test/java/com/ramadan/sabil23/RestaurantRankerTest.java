@@ -0,0 +1,122 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.model.Restaurant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RestaurantRankerTest {
+
+    @Test
+    public void topKHeap_keepsHighestScoresBestFirst() {
+        List<Restaurant> restaurants = shuffledRestaurants(500, 1);
+        RestaurantRanker.TopKHeap heap = new RestaurantRanker.TopKHeap(10);
+        for (Restaurant restaurant : restaurants) {
+            heap.offer(restaurant.getRating(), restaurant);
+        }
+
+        List<Restaurant> top = heap.toSortedList();
+        assertEquals(10, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals("r" + (499 - i), top.get(i).getId());
+        }
+
+        // Reading the ranking leaves the heap as it was
+        assertEquals(ids(top), ids(heap.toSortedList()));
+    }
+
+    @Test
+    public void topKHeap_fewerItemsThanCapacity() {
+        RestaurantRanker.TopKHeap heap = new RestaurantRanker.TopKHeap(10);
+        for (Restaurant restaurant : shuffledRestaurants(4, 2)) {
+            heap.offer(restaurant.getRating(), restaurant);
+        }
+
+        List<String> expected = new ArrayList<>();
+        Collections.addAll(expected, "r3", "r2", "r1", "r0");
+        assertEquals(expected, ids(heap.toSortedList()));
+    }
+
+    @Test
+    public void topKHeap_zeroCapacity() {
+        RestaurantRanker.TopKHeap heap = new RestaurantRanker.TopKHeap(0);
+        heap.offer(5f, restaurant(0, 5f));
+        assertTrue(heap.toSortedList().isEmpty());
+    }
+
+    @Test
+    public void topK_matchesFullSort() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            restaurants.add(new Restaurant.Builder("r" + i, "r" + i)
+                    .setDistance(random.nextInt(1000000) + i / 1000.0)
+                    .build());
+        }
+
+        List<Restaurant> sorted = new ArrayList<>(restaurants);
+        Collections.sort(sorted, (a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+
+        List<Restaurant> top = RestaurantRanker.topK(restaurants, 25, RestaurantManager.SORT_DISTANCE, null, null);
+        assertEquals(ids(sorted.subList(0, 25)), ids(top));
+    }
+
+    @Test
+    public void session_replacesRedeliveredRestaurant() throws InterruptedException {
+        BlockingQueue<List<Restaurant>> rankings = new LinkedBlockingQueue<>();
+        RestaurantRanker.Session session = RestaurantRanker.getInstance()
+                .newSession(2, RestaurantManager.SORT_RATING, null, null, rankings::add);
+
+        List<Restaurant> first = new ArrayList<>();
+        Collections.addAll(first, restaurant(0, 1f), restaurant(1, 2f), restaurant(2, 3f));
+        session.offer(first);
+        assertEquals(ids("r2", "r1"), ids(rankings.poll(5, TimeUnit.SECONDS)));
+
+        // r0 comes back rated higher and r2 rated lower, both replace their first copies
+        List<Restaurant> second = new ArrayList<>();
+        Collections.addAll(second, restaurant(0, 4f), restaurant(2, 0.5f), restaurant(3, 1.5f));
+        session.offer(second);
+        List<Restaurant> top = rankings.poll(5, TimeUnit.SECONDS);
+        assertEquals(ids("r0", "r1"), ids(top));
+        assertEquals(4f, top.get(0).getRating(), 0);
+    }
+
+    /**
+     * Restaurants r0 to r(n - 1) rated 0.01 apart, in random order
+     */
+    private static List<Restaurant> shuffledRestaurants(int n, long seed) {
+        List<Restaurant> restaurants = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            restaurants.add(restaurant(i, i / 100f));
+        }
+        Collections.shuffle(restaurants, new Random(seed));
+        return restaurants;
+    }
+
+    private static Restaurant restaurant(int i, float rating) {
+        return new Restaurant.Builder("r" + i, "r" + i).setRating(rating).build();
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> result = new ArrayList<>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    private static List<String> ids(List<Restaurant> restaurants) {
+        List<String> result = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            result.add(restaurant.getId());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package com.ramadan.sabil23;
+
+import com.ramadan.sabil23.location.GeoHash;
+import com.ramadan.sabil23.model.Restaurant;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RestaurantSpatialIndexTest {
+
+    @Test
+    public void queryBounds_acrossAntimeridian() {
+        RestaurantSpatialIndex index = new RestaurantSpatialIndex();
+        index.put(restaurant("east", -17.7, 179.9));
+        index.put(restaurant("west", -17.7, -179.9));
+        index.put(restaurant("edge", -17.7, 180));
+        index.put(restaurant("far", -17.7, 170));
+        index.put(restaurant("south", -19.5, 179.95));
+
+        assertEquals(ids("east", "edge", "west"), ids(index.queryBounds(-18, 179.5, -17, -179.5)));
+    }
+
+    @Test
+    public void queryBounds_largeBoxAcrossAntimeridian() {
+        RestaurantSpatialIndex index = new RestaurantSpatialIndex();
+        index.put(restaurant("east", 0, 150));
+        index.put(restaurant("west", 0, -150));
+        index.put(restaurant("middle", 0, 0));
+
+        // Spans more grid cells than there are restaurants, so the occupied cells are walked
+        assertEquals(ids("east", "west"), ids(index.queryBounds(-10, 100, 10, -100)));
+        assertEquals(ids("middle"), ids(index.queryBounds(-10, -100, 10, 100)));
+    }
+
+    @Test
+    public void queryBounds_plainBox() {
+        RestaurantSpatialIndex index = new RestaurantSpatialIndex();
+        index.put(restaurant("inside", 21.42, 39.82));
+        index.put(restaurant("outside", 21.50, 39.82));
+
+        assertEquals(ids("inside"), ids(index.queryBounds(21.40, 39.80, 21.45, 39.85)));
+    }
+
+    @Test
+    public void put_replacesSamePlaceId() {
+        RestaurantSpatialIndex index = new RestaurantSpatialIndex();
+        index.put(restaurant("moved", 21.42, 39.82));
+        index.put(restaurant("moved", -17.7, 179.9));
+
+        assertEquals(1, index.size());
+        assertTrue(index.queryBounds(21.40, 39.80, 21.45, 39.85).isEmpty());
+        assertEquals(ids("moved"), ids(index.queryBounds(-18, 179.5, -17, -179.5)));
+    }
+
+    @Test
+    public void queryRadius_acrossAntimeridian() {
+        RestaurantSpatialIndex index = new RestaurantSpatialIndex();
+        index.put(restaurant("near", 0, -179.999));
+        index.put(restaurant("far", 0, -179.9));
+
+        List<Restaurant> found = index.queryRadius(0, 179.999, 1000);
+        assertEquals(ids("near"), ids(found));
+        assertEquals(2 * 0.001 * GeoHash.METERS_PER_DEGREE,
+                found.get(0).getDistance(), 1);
+    }
+
+    private static Restaurant restaurant(String id, double latitude, double longitude) {
+        return new Restaurant.Builder(id, id).setLocation(latitude, longitude).build();
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> result = new ArrayList<>();
+        Collections.addAll(result, ids);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static List<String> ids(List<Restaurant> restaurants) {
+        List<String> result = new ArrayList<>();
+        for (Restaurant restaurant : restaurants) {
+            result.add(restaurant.getId());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
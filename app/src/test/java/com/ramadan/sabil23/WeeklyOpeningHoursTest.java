@@ -0,0 +1,102 @@
+package com.ramadan.sabil23;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+public class WeeklyOpeningHoursTest {
+
+    @Test
+    public void isOpenAt_dailyPeriods() throws Exception {
+        WeeklyOpeningHours hours = WeeklyOpeningHours.fromPeriods(daily("1200", "2300"));
+
+        for (int day = 0; day < 7; day++) {
+            assertFalse(hours.isOpenAt(day, 11 * 60 + 59));
+            assertTrue(hours.isOpenAt(day, 12 * 60));
+            assertTrue(hours.isOpenAt(day, 22 * 60 + 59));
+            assertFalse(hours.isOpenAt(day, 23 * 60));
+        }
+        assertTrue(hours.isOpenAt(at(Calendar.MONDAY, 18, 0)));
+        assertFalse(hours.isOpenAt(at(Calendar.MONDAY, 23, 30)));
+    }
+
+    @Test
+    public void fromPeriods_onlyCountsFullQuarterHours() throws Exception {
+        WeeklyOpeningHours hours = WeeklyOpeningHours.fromPeriods(new JSONArray(
+                "[{\"open\":{\"day\":2,\"time\":\"1210\"},\"close\":{\"day\":2,\"time\":\"1350\"}}]"));
+
+        assertFalse(hours.isOpenAt(2, 12 * 60 + 10));
+        assertTrue(hours.isOpenAt(2, 12 * 60 + 15));
+        assertTrue(hours.isOpenAt(2, 13 * 60 + 44));
+        assertFalse(hours.isOpenAt(2, 13 * 60 + 45));
+        assertFalse(hours.isOpenAt(3, 12 * 60 + 30));
+    }
+
+    @Test
+    public void fromPeriods_wrapsPastSaturdayMidnight() throws Exception {
+        WeeklyOpeningHours hours = WeeklyOpeningHours.fromPeriods(new JSONArray(
+                "[{\"open\":{\"day\":6,\"time\":\"2000\"},\"close\":{\"day\":0,\"time\":\"0200\"}}]"));
+
+        assertTrue(hours.isOpenAt(6, 21 * 60));
+        assertTrue(hours.isOpenAt(0, 60));
+        assertFalse(hours.isOpenAt(0, 2 * 60));
+        assertTrue(hours.isOpenThroughout(at(Calendar.SATURDAY, 23, 30), 60));
+    }
+
+    @Test
+    public void fromPeriods_openAroundTheClock() throws Exception {
+        WeeklyOpeningHours hours = WeeklyOpeningHours.fromPeriods(new JSONArray(
+                "[{\"open\":{\"day\":0,\"time\":\"0000\"}}]"));
+
+        for (int slot = 0; slot < WeeklyOpeningHours.SLOTS_PER_WEEK; slot++) {
+            int minute = slot * WeeklyOpeningHours.MINUTES_PER_SLOT;
+            assertTrue(hours.isOpenAt(minute / (24 * 60), minute % (24 * 60)));
+        }
+        assertTrue(hours.isOpenThroughout(at(Calendar.SATURDAY, 23, 45), 120));
+    }
+
+    @Test
+    public void isOpenThroughout_iftarWindow() throws Exception {
+        Calendar maghrib = at(Calendar.THURSDAY, 18, 30);
+
+        assertTrue(WeeklyOpeningHours.fromPeriods(daily("1700", "1930")).isOpenThroughout(maghrib, 60));
+        assertFalse(WeeklyOpeningHours.fromPeriods(daily("1700", "1900")).isOpenThroughout(maghrib, 60));
+        assertFalse(WeeklyOpeningHours.fromPeriods(daily("1700", "1920")).isOpenThroughout(maghrib, 60));
+        assertFalse(WeeklyOpeningHours.fromPeriods(daily("1845", "2300")).isOpenThroughout(maghrib, 60));
+    }
+
+    @Test
+    public void longArray_roundTrip() throws Exception {
+        WeeklyOpeningHours hours = WeeklyOpeningHours.fromPeriods(daily("0930", "2215"));
+        WeeklyOpeningHours restored = WeeklyOpeningHours.fromLongArray(hours.toLongArray());
+
+        assertArrayEquals(hours.toLongArray(), restored.toLongArray());
+        assertTrue(restored.isOpenAt(4, 10 * 60));
+        assertTrue(restored.isEverOpen());
+        assertFalse(WeeklyOpeningHours.fromPeriods(new JSONArray("[]")).isEverOpen());
+    }
+
+    private static JSONArray daily(String open, String close) throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int day = 0; day < 7; day++) {
+            if (day > 0) json.append(',');
+            json.append("{\"open\":{\"day\":").append(day).append(",\"time\":\"").append(open)
+                    .append("\"},\"close\":{\"day\":").append(day).append(",\"time\":\"").append(close)
+                    .append("\"}}");
+        }
+        return new JSONArray(json.append(']').toString());
+    }
+
+    /**
+     * A time in the week of Sunday 1 March 2026
+     */
+    private static Calendar at(int dayOfWeek, int hour, int minute) {
+        Calendar time = Calendar.getInstance();
+        time.clear();
+        time.set(2026, Calendar.MARCH, 1 + dayOfWeek - Calendar.SUNDAY, hour, minute);
+        return time;
+    }
+}
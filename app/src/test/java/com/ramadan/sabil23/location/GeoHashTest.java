@@ -0,0 +1,67 @@
+package com.ramadan.sabil23.location;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GeoHashTest {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    @Test
+    public void encodeString_knownHash() {
+        assertEquals("u4pruydqqvj", GeoHash.encodeString(57.64911, 10.40744, 11));
+        assertEquals("ezs42", GeoHash.encodeString(42.6, -5.6, 5));
+    }
+
+    @Test
+    public void encode_matchesBase32Hash() {
+        double[][] points = {{57.64911, 10.40744}, {-33.8688, 151.2093}, {21.4225, 39.8262}, {0, -179.99}};
+        for (double[] point : points) {
+            String hash = GeoHash.encodeString(point[0], point[1], 12);
+            assertEquals(hash, fromBase32(hash), GeoHash.encode(point[0], point[1], 60));
+        }
+    }
+
+    @Test
+    public void indices_clampToGrid() {
+        assertEquals(0, GeoHash.latitudeIndex(-90, 15));
+        assertEquals((1 << 15) - 1, GeoHash.latitudeIndex(90, 15));
+        assertEquals(0, GeoHash.longitudeIndex(-180, 15));
+        assertEquals((1 << 15) - 1, GeoHash.longitudeIndex(180, 15));
+        assertEquals(1, GeoHash.latitudeIndex(0, 1));
+        assertEquals(0, GeoHash.longitudeIndex(-0.001, 1));
+    }
+
+    @Test
+    public void cellOf_matchesEncodeOfCellCenter() {
+        int bits = 15;
+        double height = GeoHash.cellHeightDegrees(bits);
+        double width = GeoHash.cellWidthDegrees(bits);
+        assertEquals(180.0 / 32768, height, 0);
+        assertEquals(360.0 / 32768, width, 0);
+
+        long row = GeoHash.latitudeIndex(21.4225, bits);
+        long column = GeoHash.longitudeIndex(39.8262, bits);
+        double centerLat = -90 + (row + 0.5) * height;
+        double centerLng = -180 + (column + 0.5) * width;
+        assertEquals(GeoHash.encode(centerLat, centerLng, 2 * bits), GeoHash.cellOf(row, column, bits));
+        assertEquals(GeoHash.encode(21.4225, 39.8262, 2 * bits), GeoHash.cellOf(row, column, bits));
+    }
+
+    @Test
+    public void distanceMeters_oneDegreeOfLatitude() {
+        assertEquals(GeoHash.METERS_PER_DEGREE, GeoHash.distanceMeters(10, 20, 11, 20), 1e-6);
+        assertEquals(0, GeoHash.distanceMeters(10, 20, 10, 20), 0);
+
+        // Across the antimeridian the short way round
+        assertEquals(2 * 0.1 * GeoHash.METERS_PER_DEGREE, GeoHash.distanceMeters(0, 179.9, 0, -179.9), 1);
+    }
+
+    private static long fromBase32(String hash) {
+        long value = 0;
+        for (int i = 0; i < hash.length(); i++) {
+            value = (value << 5) | BASE32.indexOf(hash.charAt(i));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,209 @@
+package com.ramadan.sabil23.location;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the shared polyline decoder against the per-point LatLng decoder it replaced.
+ */
+public class PolylineDecoderTest {
+
+    // About the point count of the overview polyline of a long intercity route
+    private static final int LONG_ROUTE_POINTS = 20000;
+
+    @Test
+    public void decode_documentedExample() {
+        PolylineDecoder.Buffer buffer = PolylineDecoder.decode("_p~iF~ps|U_ulLnnqC_mqNvxq`@", null);
+
+        assertEquals(3, buffer.size());
+        assertEquals(3850000, buffer.getLatitudeE5(0));
+        assertEquals(-12020000, buffer.getLongitudeE5(0));
+        assertEquals(4070000, buffer.getLatitudeE5(1));
+        assertEquals(-12095000, buffer.getLongitudeE5(1));
+        assertEquals(4325200, buffer.getLatitudeE5(2));
+        assertEquals(-12645300, buffer.getLongitudeE5(2));
+    }
+
+    @Test
+    public void decode_longRouteMatchesOldDecoder() {
+        String encoded = encode(randomRoute(LONG_ROUTE_POINTS, 1));
+        int[] expected = decodeOld(encoded);
+
+        PolylineDecoder.Buffer buffer = PolylineDecoder.decode(encoded, null);
+        assertEquals(expected.length / 2, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals("latitude " + i, expected[2 * i], buffer.getLatitudeE5(i));
+            assertEquals("longitude " + i, expected[2 * i + 1], buffer.getLongitudeE5(i));
+
+            // The old decoder divided the same integers, so the doubles are the same too
+            assertEquals(expected[2 * i] / 1E5, buffer.getLatitude(i), 0);
+            assertEquals(expected[2 * i + 1] / 1E5, buffer.getLongitude(i), 0);
+        }
+    }
+
+    @Test
+    public void decode_reusedBufferDropsOldPoints() {
+        PolylineDecoder.Buffer buffer = PolylineDecoder.decode(encode(randomRoute(500, 2)), null);
+        String shorter = encode(randomRoute(10, 3));
+        int[] expected = decodeOld(shorter);
+
+        assertSame(buffer, PolylineDecoder.decode(shorter, buffer));
+        assertEquals(10, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            assertEquals(expected[2 * i], buffer.getLatitudeE5(i));
+            assertEquals(expected[2 * i + 1], buffer.getLongitudeE5(i));
+        }
+    }
+
+    @Test
+    public void decode_emptyPolyline() {
+        assertEquals(0, PolylineDecoder.decode("", null).size());
+    }
+
+    /**
+     * Decodes a long route over and over, reporting the time per point of both decoders
+     * and checking that decoding into a warm buffer allocates next to nothing
+     */
+    @Test
+    public void decode_longRouteTimingAndAllocation() {
+        String encoded = encode(randomRoute(LONG_ROUTE_POINTS, 4));
+        int rounds = 50;
+
+        PolylineDecoder.Buffer buffer = new PolylineDecoder.Buffer();
+        long checksum = 0;
+        for (int i = 0; i < rounds; i++) {
+            checksum += PolylineDecoder.decode(encoded, buffer).getLatitudeE5(LONG_ROUTE_POINTS - 1);
+            checksum += decodeOld(encoded)[1];
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            checksum += PolylineDecoder.decode(encoded, buffer).getLatitudeE5(LONG_ROUTE_POINTS - 1);
+        }
+        long bufferNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            checksum += decodeOldToObjects(encoded).length;
+        }
+        long oldNanos = System.nanoTime() - start;
+
+        // Loose bound, the buffer decoder is several times faster on a warm JIT
+        String timings = "Polyline decode of " + LONG_ROUTE_POINTS + " points: "
+                + bufferNanos / rounds / LONG_ROUTE_POINTS + " ns/point into a buffer, "
+                + oldNanos / rounds / LONG_ROUTE_POINTS + " ns/point into LatLng objects";
+        assertTrue(timings, bufferNanos <= 2 * oldNanos);
+        assertTrue(checksum != 0);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported()) return;
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            PolylineDecoder.decode(encoded, buffer);
+        }
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+
+        // A warm buffer is not grown, only the measuring itself may allocate a little
+        assertTrue("Allocated " + allocated + " bytes decoding into a warm buffer", allocated < 64 * 1024);
+    }
+
+    /**
+     * The decoder PolylineDecoder replaced, returning its E5 integers instead of LatLngs
+     */
+    private static int[] decodeOld(String encoded) {
+        int[] points = new int[encoded.length()];
+        int count = 0;
+        int index = 0, len = encoded.length();
+        int lat = 0, lng = 0;
+
+        while (index < len) {
+            int b, shift = 0, result = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            int dlat = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
+            lat += dlat;
+
+            shift = 0;
+            result = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            int dlng = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
+            lng += dlng;
+
+            points[count++] = lat;
+            points[count++] = lng;
+        }
+        return Arrays.copyOf(points, count);
+    }
+
+    /**
+     * The old decoder allocating one object per point, as it did with LatLng, for timing
+     */
+    private static double[][] decodeOldToObjects(String encoded) {
+        int[] e5 = decodeOld(encoded);
+        double[][] points = new double[e5.length / 2][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[] {e5[2 * i] / 1E5, e5[2 * i + 1] / 1E5};
+        }
+        return points;
+    }
+
+    /**
+     * A random walk of E5 points, with the odd long jump and points across both signs
+     */
+    private static int[] randomRoute(int points, long seed) {
+        Random random = new Random(seed);
+        int[] e5 = new int[2 * points];
+        int lat = 2446000;
+        int lng = 4670000;
+        for (int i = 0; i < points; i++) {
+            int step = random.nextInt(20) == 0 ? 200000 : 500;
+            lat = Math.max(-9000000, Math.min(9000000, lat + random.nextInt(2 * step + 1) - step));
+            lng = Math.max(-18000000, Math.min(18000000, lng + random.nextInt(2 * step + 1) - step));
+            if (i == points / 2) {
+                lat = -lat;
+                lng = -lng;
+            }
+            e5[2 * i] = lat;
+            e5[2 * i + 1] = lng;
+        }
+        return e5;
+    }
+
+    private static String encode(int[] e5) {
+        StringBuilder out = new StringBuilder();
+        int lat = 0, lng = 0;
+        for (int i = 0; i < e5.length; i += 2) {
+            encodeValue(e5[i] - lat, out);
+            encodeValue(e5[i + 1] - lng, out);
+            lat = e5[i];
+            lng = e5[i + 1];
+        }
+        return out.toString();
+    }
+
+    private static void encodeValue(int value, StringBuilder out) {
+        int v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            out.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>>= 5;
+        }
+        out.append((char) (v + 63));
+    }
+}
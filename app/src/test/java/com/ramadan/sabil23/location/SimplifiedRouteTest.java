@@ -0,0 +1,162 @@
+package com.ramadan.sabil23.location;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SimplifiedRouteTest {
+
+    @Test
+    public void levels_areNestedSubsetsKeepingTheEnds() {
+        PolylineDecoder.Buffer buffer = decode(randomRoute(5000, 1));
+        SimplifiedRoute route = new SimplifiedRoute(buffer);
+        assertEquals(5000, route.size());
+
+        int[] previous = null;
+        for (int level = SimplifiedRoute.MIN_ZOOM; level <= SimplifiedRoute.MAX_ZOOM; level++) {
+            int[] indices = indicesOf(route.getPoints(level), buffer);
+            assertEquals(route.getPointCount(level), indices.length);
+            assertEquals(0, indices[0]);
+            assertEquals(buffer.size() - 1, indices[indices.length - 1]);
+            for (int i = 1; i < indices.length; i++) {
+                assertTrue(indices[i] > indices[i - 1]);
+            }
+
+            // Every point kept zoomed out is still kept one level closer
+            if (previous != null) {
+                assertTrue(indices.length >= previous.length);
+                int j = 0;
+                for (int index : previous) {
+                    while (j < indices.length && indices[j] < index) j++;
+                    assertTrue("level " + level + " dropped point " + index,
+                            j < indices.length && indices[j] == index);
+                }
+            }
+            previous = indices;
+        }
+        assertTrue(route.getPointCount(SimplifiedRoute.MIN_ZOOM) < route.getPointCount(SimplifiedRoute.MAX_ZOOM));
+    }
+
+    @Test
+    public void levels_stayWithinOnePixelOfTheRoute() {
+        PolylineDecoder.Buffer buffer = decode(randomRoute(2000, 2));
+        SimplifiedRoute route = new SimplifiedRoute(buffer);
+
+        double cosLat = Math.cos(Math.toRadians(buffer.getLatitude(0)));
+        for (int level = SimplifiedRoute.MIN_ZOOM; level <= SimplifiedRoute.MAX_ZOOM; level++) {
+            double tolerance = 156543.03392 * cosLat / (1 << level);
+            int[] indices = indicesOf(route.getPoints(level), buffer);
+            for (int k = 1; k < indices.length; k++) {
+                for (int i = indices[k - 1] + 1; i < indices[k]; i++) {
+                    double deviation = segmentDistance(buffer, cosLat, i, indices[k - 1], indices[k]);
+                    assertTrue("level " + level + " point " + i, deviation <= tolerance + 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void straightLine_keepsOnlyTheEnds() {
+        int[] e5 = new int[2 * 100];
+        for (int i = 0; i < 100; i++) {
+            e5[2 * i] = 2100000 + 100 * i;
+            e5[2 * i + 1] = 3900000 + 50 * i;
+        }
+        SimplifiedRoute route = new SimplifiedRoute(decode(e5));
+
+        for (int level = SimplifiedRoute.MIN_ZOOM; level <= SimplifiedRoute.MAX_ZOOM; level++) {
+            List<LatLng> points = route.getPoints(level);
+            assertEquals(2, points.size());
+            assertEquals(21.0, points.get(0).latitude, 0);
+            assertEquals(39.0, points.get(0).longitude, 0);
+            assertEquals(21.099, points.get(1).latitude, 1e-9);
+            assertEquals(39.0495, points.get(1).longitude, 1e-9);
+        }
+    }
+
+    @Test
+    public void levelForZoom_clampsToLevels() {
+        assertEquals(SimplifiedRoute.MIN_ZOOM, SimplifiedRoute.levelForZoom(0f));
+        assertEquals(SimplifiedRoute.MIN_ZOOM, SimplifiedRoute.levelForZoom(2.5f));
+        assertEquals(11, SimplifiedRoute.levelForZoom(10.2f));
+        assertEquals(12, SimplifiedRoute.levelForZoom(12f));
+        assertEquals(SimplifiedRoute.MAX_ZOOM, SimplifiedRoute.levelForZoom(21f));
+    }
+
+    @Test
+    public void tinyRoutes() {
+        assertEquals(0, new SimplifiedRoute(decode(new int[0])).getPointCount(SimplifiedRoute.MIN_ZOOM));
+        assertEquals(1, new SimplifiedRoute(decode(new int[] {100, 200})).getPointCount(SimplifiedRoute.MAX_ZOOM));
+        assertEquals(2, new SimplifiedRoute(decode(new int[] {100, 200, 300, 400})).getPointCount(SimplifiedRoute.MIN_ZOOM));
+    }
+
+    /**
+     * Maps the points of a level back to their indices in the full route
+     */
+    private static int[] indicesOf(List<LatLng> points, PolylineDecoder.Buffer buffer) {
+        int[] indices = new int[points.size()];
+        int next = 0;
+        for (int i = 0; i < points.size(); i++) {
+            LatLng point = points.get(i);
+            while (buffer.getLatitude(next) != point.latitude || buffer.getLongitude(next) != point.longitude) {
+                next++;
+            }
+            indices[i] = next++;
+        }
+        return indices;
+    }
+
+    /**
+     * Meters from point i to the segment from a to b, in the flat projection of SimplifiedRoute
+     */
+    private static double segmentDistance(PolylineDecoder.Buffer buffer, double cosLat, int i, int a, int b) {
+        double px = buffer.getLongitude(i) * cosLat, py = buffer.getLatitude(i);
+        double ax = buffer.getLongitude(a) * cosLat, ay = buffer.getLatitude(a);
+        double bx = buffer.getLongitude(b) * cosLat, by = buffer.getLatitude(b);
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t * dx), ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey) * GeoHash.METERS_PER_DEGREE;
+    }
+
+    private static int[] randomRoute(int points, long seed) {
+        Random random = new Random(seed);
+        int[] e5 = new int[2 * points];
+        int lat = 2446000, lng = 4670000;
+        for (int i = 0; i < points; i++) {
+            lat += random.nextInt(401) - 100;
+            lng += random.nextInt(401) - 200;
+            e5[2 * i] = lat;
+            e5[2 * i + 1] = lng;
+        }
+        return e5;
+    }
+
+    private static PolylineDecoder.Buffer decode(int[] e5) {
+        StringBuilder encoded = new StringBuilder();
+        int lat = 0, lng = 0;
+        for (int i = 0; i < e5.length; i += 2) {
+            encodeValue(e5[i] - lat, encoded);
+            encodeValue(e5[i + 1] - lng, encoded);
+            lat = e5[i];
+            lng = e5[i + 1];
+        }
+        return PolylineDecoder.decode(encoded.toString(), null);
+    }
+
+    private static void encodeValue(int value, StringBuilder out) {
+        int v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            out.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>>= 5;
+        }
+        out.append((char) (v + 63));
+    }
+}